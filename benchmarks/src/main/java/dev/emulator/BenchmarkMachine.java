@@ -0,0 +1,45 @@
+package dev.emulator;
+
+import dev.emulator.cartridge.Cartridge;
+import dev.emulator.cpu.Cpu;
+import dev.emulator.display.NullFrameSink;
+import dev.emulator.memory.MemoryBus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A headless machine booted from a ROM and run for a fixed number of frames.
+ * No input is ever pressed, so the same ROM and frame count always give the same state.
+ */
+public final class BenchmarkMachine {
+    public static final String DEFAULT_ROM = "alleyway.gb";
+    public static final long CYCLES_PER_FRAME = 70224;
+
+    public final MemoryBus bus;
+    public final Cpu cpu;
+
+    private BenchmarkMachine(MemoryBus bus, Cpu cpu) {
+        this.bus = bus;
+        this.cpu = cpu;
+    }
+
+    public static BenchmarkMachine boot(String romPath, int frames) {
+        Cartridge cart;
+        try {
+            cart = Cartridge.open(romPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("ROM not found: " + romPath + " (run from the project root)", e);
+        }
+
+        MemoryBus bus = new MemoryBus(new NullFrameSink());
+        bus.insertCartridge(cart);
+        Cpu cpu = new Cpu(bus);
+
+        long target = frames * CYCLES_PER_FRAME;
+        while (cpu.cycles < target) {
+            cpu.step();
+        }
+        return new BenchmarkMachine(bus, cpu);
+    }
+}
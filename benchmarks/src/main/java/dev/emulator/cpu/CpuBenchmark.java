@@ -0,0 +1,128 @@
+package dev.emulator.cpu;
+
+import dev.emulator.BenchmarkMachine;
+import dev.emulator.memory.MemoryBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-instruction costs of the interpreter: base opcode dispatch, the ALU and the CB page.
+ * Every invocation starts from the same registers, so the numbers are per instruction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuBenchmark {
+    // Scratch WRAM PC and HL point at
+    private static final int CODE = 0xC800;
+    private static final int DATA = 0xC900;
+    // Immediate for d8/e8/nn operands (pre-decoded, so it is handed over with the opcode)
+    private static final int IMMEDIATE = 0x0012;
+
+    @State(Scope.Thread)
+    public static class Machine {
+        @Param(BenchmarkMachine.DEFAULT_ROM)
+        public String rom;
+
+        MemoryBus bus;
+        Cpu cpu;
+        Registers registers;
+
+        @Setup(Level.Trial)
+        public void boot() {
+            BenchmarkMachine machine = BenchmarkMachine.boot(rom, 300);
+            bus = machine.bus;
+            cpu = machine.cpu;
+            registers = cpu.getRegisters();
+
+            // The byte (HL) points at
+            bus.writeByte(DATA, 0x5A);
+        }
+
+        // Same starting registers and immediate for every invocation
+        void reset(int pc, int operand) {
+            cpu.operand = operand;
+            registers.a = 0x3C;
+            registers.setF(0x00);
+            registers.b = 0x42;
+            registers.c = 0x07;
+            registers.h = DATA >> 8;
+            registers.l = DATA & 0xFF;
+            registers.sp = 0xCFFE;
+            registers.pc = pc;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Opcode {
+        // NOP, LD B,C, LD A,(HL), INC A, ADD A,B, XOR A, LD A,d8, JR NZ,e8, PUSH BC, CALL nn
+        @Param({"00", "41", "7E", "3C", "80", "AF", "3E", "20", "C5", "CD"})
+        public String opcode;
+
+        int value;
+
+        @Setup(Level.Trial)
+        public void parse() {
+            value = Integer.parseInt(opcode, 16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CbOpcode {
+        // RLC B, SWAP A, BIT 7,H, RES 0,A, SET 3,(HL)
+        @Param({"00", "37", "7C", "87", "DE"})
+        public String opcode;
+
+        int value;
+
+        @Setup(Level.Trial)
+        public void parse() {
+            value = Integer.parseInt(opcode, 16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AluOp {
+        // 0=ADD 1=ADC 2=SUB 3=SBC 4=AND 5=XOR 6=OR 7=CP
+        @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+        public int type;
+    }
+
+    @Benchmark
+    public long dispatch(Machine m, Opcode op) {
+        m.reset(CODE, IMMEDIATE);
+        m.cpu.executeOpcode(op.value);
+        return m.cpu.cycles;
+    }
+
+    @Benchmark
+    public long cbPrefix(Machine m, CbOpcode op) {
+        m.reset(CODE, op.value); // The CB opcode is the prefix's immediate
+        m.cpu.executeOpcode(0xCB);
+        return m.cpu.cycles;
+    }
+
+    @Benchmark
+    public void alu(Machine m, AluOp op, Blackhole bh) {
+        m.reset(CODE, IMMEDIATE);
+        m.cpu.executeOpcode(0x80 | (op.type << 3)); // <op> A, B
+        bh.consume(m.registers.a);
+        bh.consume(m.registers.flagZ); // Raw lazy flags: packing F is not part of the ALU cost
+        bh.consume(m.registers.flagC);
+    }
+}
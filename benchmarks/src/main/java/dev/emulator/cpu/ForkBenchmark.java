@@ -0,0 +1,60 @@
+package dev.emulator.cpu;
+
+import dev.emulator.BenchmarkMachine;
+import dev.emulator.display.FrameSkipPolicy;
+import dev.emulator.display.NullFrameSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forks per second of a running machine, bare and followed by one frame of the child (which then
+ * pays for the pages it writes). Run with {@code -prof gc}: gc.alloc.rate.norm is the memory
+ * each fork costs, in bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ForkBenchmark {
+
+    @Param(BenchmarkMachine.DEFAULT_ROM)
+    public String rom;
+
+    private final NullFrameSink sink = new NullFrameSink();
+    private Cpu parent;
+
+    @Setup(Level.Trial)
+    public void boot() {
+        parent = BenchmarkMachine.boot(rom, 300).cpu;
+    }
+
+    @Benchmark
+    public Cpu fork() {
+        return parent.fork(sink);
+    }
+
+    @Benchmark
+    public Cpu forkAndRunFrame() {
+        Cpu child = parent.fork(sink);
+        child.getBus().getPpu().setFrameSkip(FrameSkipPolicy.NEVER);
+        long end = child.cycles + BenchmarkMachine.CYCLES_PER_FRAME;
+        while (child.cycles < end) {
+            child.step();
+        }
+        return child;
+    }
+}
@@ -0,0 +1,74 @@
+package dev.emulator.hardware;
+
+import dev.emulator.BenchmarkMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering one scanline, per layer, over the VRAM/OAM the ROM has set up.
+ * The line advances every invocation so all 144 visible lines get sampled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PpuBenchmark {
+
+    @Param(BenchmarkMachine.DEFAULT_ROM)
+    public String rom;
+
+    private Ppu ppu;
+    private int line;
+
+    @Setup(Level.Trial)
+    public void boot() {
+        ppu = BenchmarkMachine.boot(rom, 300).bus.getPpu();
+
+        // Make sure the window covers the whole screen, whatever the ROM left in WY/WX
+        ppu.writeByte(0xFF4A, 0);
+        ppu.writeByte(0xFF4B, 7);
+    }
+
+    private void nextLine() {
+        line = (line + 1) % 144;
+        ppu.seekLine(line);
+    }
+
+    @Benchmark
+    public void background() {
+        nextLine();
+        ppu.renderBackground();
+    }
+
+    @Benchmark
+    public void window() {
+        nextLine();
+        ppu.renderWindow();
+    }
+
+    @Benchmark
+    public void sprites() {
+        nextLine();
+        ppu.renderSprites();
+    }
+
+    @Benchmark
+    public void scanline() {
+        nextLine();
+        ppu.drawScanline();
+    }
+}
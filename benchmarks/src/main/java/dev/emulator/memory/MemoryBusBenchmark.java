@@ -0,0 +1,86 @@
+package dev.emulator.memory;
+
+import dev.emulator.BenchmarkMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one bus read or write, per region of the memory map.
+ * Each invocation touches the next of 256 addresses spread over the region.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MemoryBusBenchmark {
+
+    @Param(BenchmarkMachine.DEFAULT_ROM)
+    public String rom;
+
+    @Param({"ROM0", "ROMX", "VRAM", "ERAM", "WRAM", "ECHO", "OAM", "IO", "HRAM", "IE"})
+    public String region;
+
+    private MemoryBus bus;
+    private final int[] addresses = new int[256];
+    private int index;
+    private int value;
+
+    @Setup(Level.Trial)
+    public void boot() {
+        bus = BenchmarkMachine.boot(rom, 300).bus;
+
+        switch (region) {
+            case "ROM0": spread(0x0000, 0x4000); break;
+            case "ROMX": spread(0x4000, 0x4000); break;
+            case "VRAM": spread(0x8000, 0x2000); break;
+            case "ERAM": spread(0xA000, 0x2000); break;
+            case "WRAM": spread(0xC000, 0x2000); break;
+            case "ECHO": spread(0xE000, 0x1E00); break;
+            case "OAM":  spread(0xFE00, 0xA0); break;
+            // Registers without write side effects: SCY, SCX, BGP, OBP0
+            case "IO":   cycle(0xFF42, 0xFF43, 0xFF47, 0xFF48); break;
+            case "HRAM": spread(0xFF80, 0x7F); break;
+            case "IE":   cycle(0xFFFF); break;
+            default: throw new IllegalArgumentException("Unknown region: " + region);
+        }
+    }
+
+    private void spread(int base, int size) {
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = base + (i * size / addresses.length);
+        }
+    }
+
+    private void cycle(int... registers) {
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = registers[i % registers.length];
+        }
+    }
+
+    @Benchmark
+    public int read() {
+        index = (index + 1) & 0xFF;
+        return bus.readByte(addresses[index]);
+    }
+
+    @Benchmark
+    public void write() {
+        index = (index + 1) & 0xFF;
+        value = (value + 1) & 0xFF;
+        bus.writeByte(addresses[index], value);
+    }
+}
@@ -0,0 +1,51 @@
+package dev.emulator.state;
+
+import dev.emulator.BenchmarkMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a full save state and of loading it back, into the same reusable buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveStateBenchmark {
+
+    @Param(BenchmarkMachine.DEFAULT_ROM)
+    public String rom;
+
+    private SaveState state;
+
+    @Setup(Level.Trial)
+    public void boot() {
+        BenchmarkMachine machine = BenchmarkMachine.boot(rom, 300);
+        state = new SaveState(machine.cpu, machine.bus);
+        state.save();
+    }
+
+    @Benchmark
+    public void save() {
+        state.save();
+    }
+
+    @Benchmark
+    public void load() {
+        state.load();
+    }
+}
@@ -0,0 +1,301 @@
+package dev.emulator;
+
+import dev.emulator.audio.AudioSink;
+import dev.emulator.audio.LineOut;
+import dev.emulator.audio.WavWriter;
+import dev.emulator.cartridge.Cartridge;
+import dev.emulator.cpu.Cpu;
+import dev.emulator.cpu.LockstepVerifier;
+import dev.emulator.display.Display;
+import dev.emulator.display.FramePacer;
+import dev.emulator.display.FrameSkipPolicy;
+import dev.emulator.display.NullFrameSink;
+import dev.emulator.library.RomLibrary;
+import dev.emulator.memory.MemoryBus;
+import dev.emulator.profile.SymbolTable;
+import dev.emulator.state.RewindBuffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+public class Main {
+    // --- TIMING CONSTANTS ---
+    // Game Boy Clock: 4,194,304 Hz
+    // Screen Refresh: 59.73 FPS
+    // Cycles per Frame: 70224
+    private static final long CYCLES_PER_FRAME = 70224;
+
+    // Frames to run headless when neither --frames nor --cycles is given (~1 emulated minute)
+    private static final long DEFAULT_HEADLESS_FRAMES = 3600;
+
+    // --rewind: a snapshot every 4 frames, 4500 of them (~5 emulated minutes)
+    private static final int REWIND_INTERVAL = 4;
+    private static final int REWIND_CAPACITY = 4500;
+
+    public static void main(String[] args) {
+        String romPath = "alleyway.gb";
+        boolean headless = false;
+        boolean verify = false;
+        boolean jit = true;
+        long cycleLimit = -1;
+        FrameSkipPolicy frameSkip = FrameSkipPolicy.NONE;
+        double speed = 1;
+        boolean rewind = false;
+        String library = null;
+        boolean mute = false;
+        String wavPath = null;
+        boolean audioSync = false;
+        String profilePath = null;
+        String symPath = null;
+
+        // Usage: Main [rom] [--headless | --verify] [--frames N | --cycles N] [--no-jit] [--frame-skip N | auto] [--speed X | max] [--rewind] [--library DIR] [--mute | --wav FILE] [--audio-sync] [--counters] [--profile FILE [--sym FILE]]
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--headless": headless = true; break;
+                    case "--verify": verify = true; break;
+                    case "--no-jit": jit = false; break;
+                    case "--frames": cycleLimit = Long.parseLong(args[++i]) * CYCLES_PER_FRAME; break;
+                    case "--cycles": cycleLimit = Long.parseLong(args[++i]); break;
+                    case "--frame-skip": frameSkip = parseFrameSkip(args[++i]); break;
+                    case "--speed": speed = parseSpeed(args[++i]); break;
+                    case "--rewind": rewind = true; break;
+                    case "--library": library = args[++i]; break;
+                    case "--mute": mute = true; break;
+                    case "--wav": wavPath = args[++i]; break;
+                    case "--audio-sync": audioSync = true; break;
+                    // Must be set before the first machine is built (see ExecutionCounters)
+                    case "--counters": System.setProperty("lr35902.counters", "true"); break;
+                    case "--profile": profilePath = args[++i]; System.setProperty("lr35902.profile", "true"); break;
+                    case "--sym": symPath = args[++i]; break;
+                    default: romPath = args[i]; break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Usage: Main [rom] [--headless | --verify] [--frames N | --cycles N] [--no-jit] [--frame-skip N | auto] [--speed X | max] [--rewind] [--library DIR] [--mute | --wav FILE] [--audio-sync] [--counters] [--profile FILE [--sym FILE]]");
+            return;
+        }
+
+        try {
+            // A ROM that is not a file names one in the library, by title or file name
+            if (library != null && !new File(romPath.split(Cartridge.ARCHIVE_SEPARATOR, 2)[0]).isFile()) {
+                romPath = findInLibrary(new File(library), romPath);
+                if (romPath == null) return;
+            }
+            if (verify) {
+                // Checks the table-driven interpreter against the original one, instruction by instruction
+                if (cycleLimit < 0) cycleLimit = DEFAULT_HEADLESS_FRAMES * CYCLES_PER_FRAME;
+                if (!LockstepVerifier.run(romPath, cycleLimit, jit)) System.exit(1);
+            } else if (headless) {
+                if (cycleLimit < 0) cycleLimit = DEFAULT_HEADLESS_FRAMES * CYCLES_PER_FRAME;
+                runHeadless(romPath, cycleLimit, jit, frameSkip, rewind, wavPath, profilePath, symPath);
+            } else {
+                runWindowed(romPath, jit, frameSkip, speed, rewind, mute ? null : openAudio(wavPath), audioSync,
+                        profilePath, symPath);
+            }
+        } catch (IOException e) {
+            System.err.println("ROM not found: " + romPath);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String findInLibrary(File root, String name) throws IOException {
+        RomLibrary library = new RomLibrary(root);
+        library.scan();
+        System.out.println("Library " + root + ": " + library.getEntries().size() + " ROMs in "
+                + library.getFileCount() + " files (" + library.getReusedCount() + " indexed, "
+                + library.getParsedCount() + " read) in " + library.getScanMillis() + " ms");
+        RomLibrary.Entry entry = library.find(name);
+        if (entry == null) {
+            System.err.println("No ROM titled " + name + " in " + root);
+            for (RomLibrary.Entry available : library.getEntries()) System.err.println("  " + available);
+            return null;
+        }
+        return entry.getPath();
+    }
+
+    // "auto" skips while the host falls behind real time (at most 4 frames in a row), N draws every Nth frame
+    private static FrameSkipPolicy parseFrameSkip(String value) {
+        if (value.equals("auto")) return FrameSkipPolicy.adaptive(4);
+        return FrameSkipPolicy.fixed(Integer.parseInt(value));
+    }
+
+    // A multiplier of real Game Boy speed (0.25 and up), or "max" for as fast as the host allows
+    private static double parseSpeed(String value) {
+        double speed = value.equals("max") ? FramePacer.UNLIMITED : Double.parseDouble(value);
+        if (!(speed >= 0.25)) throw new IllegalArgumentException("Speed below 0.25: " + value);
+        return speed;
+    }
+
+    // Speakers, or the WAV file if one is given; null if there is no audio output
+    private static AudioSink openAudio(String wavPath) throws IOException {
+        return wavPath != null ? new WavWriter(new File(wavPath)) : LineOut.open();
+    }
+
+    private static void runWindowed(String romPath, boolean jit, FrameSkipPolicy frameSkip, double speed,
+                                    boolean rewind, AudioSink audio, boolean audioSync, String profilePath,
+                                    String symPath) throws IOException {
+        // 1. Initialize Hardware (battery-backed RAM lives in the .sav file next to the ROM)
+        Cartridge cart = Cartridge.open(romPath);
+        cart.openSaveFile();
+        Display display = new Display();
+        MemoryBus bus = new MemoryBus(display);
+
+        // 2. Link Joypad and speed keys
+        FramePacer pacer = new FramePacer();
+        pacer.setSpeed(speed);
+        display.setJoypad(bus.getJoypad());
+        display.setPacer(pacer);
+        bus.getPpu().setFrameSkip(frameSkip);
+
+        // 3. Sound: with --audio-sync the speakers set the pace at 1x, not the frame timer
+        LineOut line = audio instanceof LineOut ? (LineOut) audio : null;
+        bus.getApu().setSink(audio);
+        pacer.setAudioClock(audioSync && line != null);
+
+        // 4. Insert Cartridge & Start CPU
+        bus.insertCartridge(cart);
+        Cpu cpu = new Cpu(bus);
+        cpu.setJitEnabled(jit);
+        RewindBuffer history = rewind ? new RewindBuffer(cpu, bus, REWIND_INTERVAL, REWIND_CAPACITY) : null;
+
+        System.out.println("Emulator Started: " + romPath);
+        // Closing the window exits the VM: save, and report how the frames made it to the screen
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            cart.closeSaveFile();
+            closeAudio(audio);
+            reportCounters(bus, cpu);
+            writeProfile(cpu, romPath, profilePath, symPath);
+            System.out.printf("Frames: %d rendered, %d skipped, %d dropped, %d repeated%n",
+                    bus.getPpu().getRenderedFrames(), bus.getPpu().getSkippedFrames(),
+                    display.getDroppedFrames(), display.getRepeatedFrames());
+        }));
+
+        long nextFrameCycleCount = CYCLES_PER_FRAME;
+
+        // --- GAME LOOP ---
+        while (true) {
+            // Run one CPU instruction
+            cpu.step();
+
+            if (cpu.cycles >= nextFrameCycleCount) {
+                nextFrameCycleCount += CYCLES_PER_FRAME;
+                bus.flushSaveRam();
+
+                if (history != null) {
+                    if (display.isRewinding() && history.stepBack()) {
+                        nextFrameCycleCount = cpu.cycles + CYCLES_PER_FRAME; // The clock went back with the state
+                    } else {
+                        history.frameDone();
+                    }
+                }
+
+                // Wait for the frame's slot in real time (59.73 FPS times the speed), or let
+                // the audio line hold the emulator back
+                if (line != null) line.setBlocking(pacer.isAudioPaced());
+                if (pacer.frameDone()) {
+                    double current = pacer.isFastForward() ? FramePacer.UNLIMITED : pacer.getSpeed();
+                    display.showStatus(String.format("%s - CPU %.0f ms per emulated second (%.0f%%)",
+                            current == FramePacer.UNLIMITED ? "max speed" : current + "x",
+                            pacer.getCpuMillisPerSecond(), 100 * pacer.getCpuLoad()));
+                }
+            }
+        }
+    }
+
+    // Runs uncapped with no window until cycleLimit, then prints throughput
+    private static void runHeadless(String romPath, long cycleLimit, boolean jit, FrameSkipPolicy frameSkip,
+                                    boolean rewind, String wavPath, String profilePath, String symPath)
+            throws IOException {
+        Cartridge cart = Cartridge.open(romPath);
+        MemoryBus bus = new MemoryBus(new NullFrameSink());
+        bus.getPpu().setFrameSkip(frameSkip);
+        bus.insertCartridge(cart);
+        Cpu cpu = new Cpu(bus);
+        cpu.setJitEnabled(jit);
+        RewindBuffer history = rewind ? new RewindBuffer(cpu, bus, REWIND_INTERVAL, REWIND_CAPACITY) : null;
+        WavWriter wav = wavPath != null ? new WavWriter(new File(wavPath)) : null;
+        bus.getApu().setSink(wav);
+
+        System.out.println("Emulator Started (headless): " + romPath);
+
+        long start = System.nanoTime();
+        long nextFrameCycleCount = CYCLES_PER_FRAME;
+        while (cpu.cycles < cycleLimit) {
+            cpu.step();
+            if (history != null && cpu.cycles >= nextFrameCycleCount) {
+                nextFrameCycleCount += CYCLES_PER_FRAME;
+                history.frameDone();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (wav != null) wav.close();
+
+        double frames = (double) cpu.cycles / CYCLES_PER_FRAME;
+        double seconds = elapsed / 1e9;
+        System.out.printf("Ran %d cycles (%.1f frames) in %.3f s%n", cpu.cycles, frames, seconds);
+        System.out.printf("Emulated FPS:   %.1f%n", frames / seconds);
+        System.out.printf("Emulated MHz:   %.3f%n", cpu.cycles / seconds / 1e6);
+        System.out.printf("Host ns/frame:  %.0f%n", elapsed / frames);
+        System.out.printf("Idle loops (%s): %d cycles skipped, %.1f%% of emulated time%n",
+                new File(romPath).getName(), cpu.getIdleCyclesSkipped(),
+                100.0 * cpu.getIdleCyclesSkipped() / cpu.cycles);
+        System.out.printf("Compiled blocks: %d%n", cpu.getCompiledBlocks());
+        System.out.printf("Frames drawn:   %d rendered, %d skipped%n",
+                bus.getPpu().getRenderedFrames(), bus.getPpu().getSkippedFrames());
+        if (wav != null) {
+            System.out.printf("Audio:          %.1f s written to %s%n",
+                    (double) wav.getFrames() / AudioSink.SAMPLE_RATE, wav.getFile());
+        }
+        reportCounters(bus, cpu);
+        writeProfile(cpu, romPath, profilePath, symPath);
+        if (history != null) {
+            System.out.printf("Rewind:         %d snapshots (%.1f s), %d KB compressed from %d KB, %d KB heap, %d dropped%n",
+                    history.getSnapshots(), history.getSecondsStored(), history.getCompressedBytes() / 1024,
+                    history.getRawBytes() / 1024, history.getMemoryBytes() / 1024, history.getDroppedSnapshots());
+        }
+    }
+
+    // With --counters: the 40 busiest opcodes and every memory region used
+    private static void reportCounters(MemoryBus bus, Cpu cpu) {
+        if (bus.getCounters() != null) bus.getCounters().report(System.out, cpu.cycles, 40);
+    }
+
+    // With --profile: the hottest addresses, and the stacks in collapsed format to profilePath.
+    // Symbols come from --sym, or else the ROM's .sym file if there is one next to it.
+    private static void writeProfile(Cpu cpu, String romPath, String profilePath, String symPath) {
+        if (cpu.getSampler() == null) return;
+        File symFile = new File(symPath != null ? symPath : romPath.replaceFirst("\\.[^.\\\\/]*$", "") + ".sym");
+        SymbolTable symbols = new SymbolTable();
+        try {
+            if (symPath != null || symFile.isFile()) {
+                symbols = SymbolTable.load(symFile);
+                System.out.println("Symbols: " + symbols.size() + " from " + symFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read symbols: " + e.getMessage());
+        }
+
+        cpu.getSampler().report(System.out, symbols, 20);
+        try (PrintStream out = new PrintStream(new FileOutputStream(profilePath), false, "UTF-8")) {
+            cpu.getSampler().writeCollapsed(out, symbols);
+            System.out.println("Profile: stacks written to " + profilePath);
+        } catch (IOException e) {
+            System.err.println("Could not write the profile: " + e.getMessage());
+        }
+    }
+
+    private static void closeAudio(AudioSink audio) {
+        try {
+            if (audio instanceof AutoCloseable) ((AutoCloseable) audio).close();
+        } catch (Exception e) {
+            System.err.println("Could not finish the audio output: " + e.getMessage());
+        }
+        if (audio instanceof LineOut && ((LineOut) audio).getDroppedFrames() > 0) {
+            System.out.printf("Audio: %d sample frames dropped%n", ((LineOut) audio).getDroppedFrames());
+        }
+    }
+}
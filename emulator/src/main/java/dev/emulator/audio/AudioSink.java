@@ -0,0 +1,13 @@
+package dev.emulator.audio;
+
+/**
+ * Anything the APU can hand its samples to.
+ * {@link LineOut} plays them through javax.sound, {@link WavWriter} writes them to a file.
+ */
+public interface AudioSink {
+    // Samples per second per channel, the same for every sink
+    int SAMPLE_RATE = 44100;
+
+    // Called on the emulation thread with a batch of `frames` stereo frames: 16-bit signed, left then right
+    void writeSamples(short[] samples, int frames);
+}
@@ -0,0 +1,104 @@
+package dev.emulator.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the samples through the default javax.sound output line.
+ *
+ * The emulation thread only copies each batch into a {@link SampleRing}; a writer thread takes
+ * them out and writes them to the line, which blocks whenever the sound card's buffer is full.
+ * So the writer runs at the pace of the audio clock and the emulation thread never touches the
+ * line. With blocking on (see {@link #setBlocking}) the emulation thread waits for room in the
+ * ring and so runs at that pace too; otherwise whatever does not fit is dropped.
+ */
+public final class LineOut implements AudioSink, AutoCloseable {
+    // ~46 ms each in the ring and in the line's buffer
+    private static final int RING_FRAMES = 2048;
+    private static final int LINE_FRAMES = 2048;
+    private static final int CHUNK_FRAMES = 512;
+    // How long either side sleeps before looking at the ring again
+    private static final long WAIT_NANOS = 500_000;
+
+    private final SourceDataLine line;
+    private final SampleRing ring = new SampleRing(2 * RING_FRAMES);
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean blocking;
+    // Written by the emulation thread only
+    private volatile long droppedFrames;
+
+    private LineOut(SourceDataLine line) {
+        this.line = line;
+        writer = new Thread(this::writeLoop, "Audio writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MAX_PRIORITY);
+        writer.start();
+    }
+
+    // Opens the default output line, or returns null if there is none (no sound card, headless host)
+    public static LineOut open() {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+        try {
+            SourceDataLine line = AudioSystem.getSourceDataLine(format);
+            line.open(format, LINE_FRAMES * 4);
+            line.start();
+            return new LineOut(line);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("No audio output: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Whether writeSamples() waits for room in the ring rather than dropping samples; set it
+    // only while running at 1x, or the emulator is held to real time
+    public void setBlocking(boolean blocking) {
+        this.blocking = blocking;
+    }
+
+    // Stereo frames that did not fit in the ring and were dropped
+    public long getDroppedFrames() { return droppedFrames; }
+
+    @Override
+    public void writeSamples(short[] samples, int frames) {
+        int length = 2 * frames;
+        int written = ring.offer(samples, 0, length);
+        while (written < length && blocking && !closed) {
+            LockSupport.parkNanos(WAIT_NANOS);
+            written += ring.offer(samples, written, length - written);
+        }
+        if (written < length) droppedFrames += (length - written) / 2;
+    }
+
+    private void writeLoop() {
+        short[] chunk = new short[2 * CHUNK_FRAMES];
+        byte[] bytes = new byte[2 * chunk.length];
+        while (!closed) {
+            int count = ring.poll(chunk, 0, chunk.length);
+            if (count == 0) {
+                LockSupport.parkNanos(WAIT_NANOS);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                bytes[2 * i] = (byte) chunk[i];
+                bytes[2 * i + 1] = (byte) (chunk[i] >> 8);
+            }
+            line.write(bytes, 0, 2 * count); // Blocks while the line's buffer is full
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        line.stop();
+        line.close();
+    }
+}
@@ -0,0 +1,59 @@
+package dev.emulator.audio;
+
+/**
+ * Lock-free ring of 16-bit samples from one producer thread to one consumer thread.
+ *
+ * Each side owns one counter and only reads the other's: the producer copies samples in and
+ * then moves `tail`, the consumer copies them out and then moves `head`. The volatile write of a
+ * counter publishes the copy before it, so no locks or atomics are needed. Counters are totals
+ * (never wrapped); their difference is the fill level and the low bits are the index.
+ */
+public final class SampleRing {
+    private final short[] buffer;
+    private final int mask;
+
+    // Written by the consumer only
+    private volatile long head;
+    // Written by the producer only
+    private volatile long tail;
+
+    // Capacity in samples, rounded up to a power of two
+    public SampleRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.buffer = new short[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    // Samples waiting to be taken
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /** Producer: copies in as many of the samples as fit, and returns how many that was. */
+    public int offer(short[] samples, int offset, int length) {
+        long tail = this.tail;
+        int count = Math.min(length, buffer.length - (int) (tail - head));
+        int index = (int) tail & mask;
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(samples, offset, buffer, index, first);
+        System.arraycopy(samples, offset + first, buffer, 0, count - first);
+        this.tail = tail + count;
+        return count;
+    }
+
+    /** Consumer: copies out up to length samples, and returns how many there were. */
+    public int poll(short[] samples, int offset, int length) {
+        long head = this.head;
+        int count = Math.min(length, (int) (tail - head));
+        int index = (int) head & mask;
+        int first = Math.min(count, buffer.length - index);
+        System.arraycopy(buffer, index, samples, offset, first);
+        System.arraycopy(buffer, 0, samples, offset + first, count - first);
+        this.head = head + count;
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package dev.emulator.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the samples to a 16-bit stereo WAV file, for runs with no sound card (headless, on a
+ * server). Samples are collected in a buffer and written out whenever it fills; the header,
+ * which holds the length, is written last, by {@link #close}.
+ */
+public final class WavWriter implements AudioSink, AutoCloseable {
+    private static final int HEADER_SIZE = 44;
+    private static final int BYTES_PER_FRAME = 4;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private long dataBytes;
+    // The first write that failed; nothing more is written after it, and close() throws it
+    private IOException error;
+
+    public WavWriter(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_SIZE);
+    }
+
+    public File getFile() { return file; }
+
+    // Stereo frames written so far
+    public long getFrames() {
+        return (dataBytes + buffer.position()) / BYTES_PER_FRAME;
+    }
+
+    @Override
+    public void writeSamples(short[] samples, int frames) {
+        for (int i = 0; i < 2 * frames; i++) {
+            if (!buffer.hasRemaining()) flush();
+            buffer.putShort(samples[i]);
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            if (error == null) {
+                while (buffer.hasRemaining()) dataBytes += channel.write(buffer);
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        try {
+            if (error != null) throw error;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt((int) (HEADER_SIZE - 8 + dataBytes));
+            header.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' }).putInt(16);
+            header.putShort((short) 1).putShort((short) 2); // PCM, stereo
+            header.putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * BYTES_PER_FRAME);
+            header.putShort((short) BYTES_PER_FRAME).putShort((short) 16);
+            header.put(new byte[] { 'd', 'a', 't', 'a' }).putInt((int) dataBytes);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        } finally {
+            channel.close();
+        }
+    }
+}
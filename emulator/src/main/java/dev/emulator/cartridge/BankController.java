@@ -0,0 +1,76 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * The memory bank controller of a cartridge: registers written through the ROM area
+ * (0x0000-0x7FFF) that select the 16KB ROM bank seen in each half of it and the 8KB RAM bank
+ * seen at 0xA000-0xBFFF. Bank numbers are returned as the chip wires them; the cartridge wraps
+ * them to the size of its ROM and RAM.
+ */
+abstract class BankController {
+    // Upper bound of what saveState() writes
+    static final int STATE_SIZE = 64;
+
+    boolean ramEnabled;
+
+    // Bank mapped at 0x0000-0x3FFF (half 0) or 0x4000-0x7FFF (half 1)
+    abstract int romBank(int half);
+
+    // Bank mapped at 0xA000-0xBFFF, or -1 if the area is not plain RAM right now
+    int ramBank() {
+        return ramEnabled ? 0 : -1;
+    }
+
+    abstract void write(int address, int value);
+
+    // Reads and writes at 0xA000-0xBFFF while ramBank() is -1
+    int readRegister() {
+        return 0xFF;
+    }
+
+    void writeRegister(int value) {
+    }
+
+    // Time source of controllers with a real-time clock, in CPU cycles
+    void setClock(LongSupplier clock) {
+    }
+
+    // The real-time clock, or null
+    RealTimeClock getRealTimeClock() {
+        return null;
+    }
+
+    // Same registers, for a fork of the machine (the clock is wired up again by the new bus)
+    abstract BankController copy();
+
+    void saveState(ByteBuffer out) {
+        out.put((byte) (ramEnabled ? 1 : 0));
+    }
+
+    void loadState(ByteBuffer in) {
+        ramEnabled = in.get() != 0;
+    }
+
+    // --- 32KB cartridges: no registers, RAM (if any) always enabled ---
+    static final class None extends BankController {
+        None() {
+            ramEnabled = true;
+        }
+
+        @Override
+        int romBank(int half) {
+            return half;
+        }
+
+        @Override
+        void write(int address, int value) {
+        }
+
+        @Override
+        BankController copy() {
+            return new None();
+        }
+    }
+}
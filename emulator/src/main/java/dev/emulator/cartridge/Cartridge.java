@@ -0,0 +1,385 @@
+package dev.emulator.cartridge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A cartridge: the ROM image, the bank controller named in its header (none, MBC1, MBC3 with or
+ * without clock, MBC5) and its RAM.
+ *
+ * The ROM file is memory-mapped read-only, not read: opening a multi-megabyte image costs
+ * nothing up front, pages come in from the OS as they are first read, and none of it is on the
+ * Java heap. A bank switch only changes which offset into the image each 16KB half of the ROM
+ * area reads from (see {@link #getRomOffset}); the bus reads the image directly at that offset.
+ *
+ * RAM is kept as 256-byte pages that the bus maps like WRAM. A fork shares them copy-on-write.
+ * On battery-backed cartridges it can be persisted to a .sav file (see {@link #openSaveFile}).
+ */
+public class Cartridge {
+    public static final int BANK_SIZE = 0x4000;
+    // MBC5's 9-bit bank number; anything past it in the file cannot be reached
+    public static final int MAX_ROM_BANKS = 512;
+
+    // Separates an archive from the ROM inside it in paths given to open()
+    public static final String ARCHIVE_SEPARATOR = "!";
+
+    // Where the ROM and its .sav file live (for a ROM from an archive: named after it, next to the archive)
+    private final File file;
+    private final ByteBuffer rom;
+    private final int romBanks;
+    private final CartridgeHeader header;
+    private final BankController controller;
+
+    // RAM as 256-byte pages (none without RAM), and which of them are shared with a fork
+    private final byte[][] ram;
+    private final boolean[] shared;
+
+    // --- BATTERY ---
+    // Null unless opened (never on a fork). While open, pages are only writable in place once
+    // marked dirty, so the first write to a clean page goes through writeByte() and marks it.
+    private SaveFile saveFile;
+    private final boolean[] dirty;
+
+    public Cartridge(String filePath) throws IOException {
+        this(new File(filePath), mapRom(new File(filePath)));
+    }
+
+    // A ROM image already in memory, e.g. unpacked from an archive; file names it (and its .sav)
+    public Cartridge(File file, ByteBuffer image) {
+        this.file = file;
+        this.rom = wholeBanks(image);
+        this.romBanks = rom.capacity() / BANK_SIZE;
+        this.header = CartridgeHeader.read(rom);
+
+        switch (header.getType()) {
+            case 0x00: case 0x08: case 0x09:
+                controller = new BankController.None();
+                break;
+            case 0x01: case 0x02: case 0x03:
+                controller = new Mbc1();
+                break;
+            case 0x0F: case 0x10:
+                controller = new Mbc3(true);
+                break;
+            case 0x11: case 0x12: case 0x13:
+                controller = new Mbc3(false);
+                break;
+            case 0x19: case 0x1A: case 0x1B: case 0x1C: case 0x1D: case 0x1E:
+                controller = new Mbc5();
+                break;
+            default:
+                System.out.println("Unsupported bank controller " + header.getControllerName()
+                        + ", running it as a plain 32KB cartridge");
+                controller = new BankController.None();
+                break;
+        }
+        int ramSize = header.getRamSize();
+        this.ram = new byte[ramSize / 0x100][0x100];
+        this.shared = new boolean[ram.length];
+        this.dirty = new boolean[ram.length];
+
+        String title = header.getTitle();
+        System.out.println("Loaded Cartridge: " + file.getName() + (title.isEmpty() ? "" : " (" + title + ")"));
+        System.out.println("Size: " + image.limit() + " bytes, " + romBanks + " ROM banks, " + (ramSize / 1024)
+                + "KB RAM" + (header.hasBattery() ? " (battery)" : "") + ", bank controller: "
+                + header.getControllerName());
+    }
+
+    // See fork()
+    private Cartridge(Cartridge source) {
+        this.file = source.file;
+        this.rom = source.rom;
+        this.romBanks = source.romBanks;
+        this.header = source.header;
+        this.controller = source.controller.copy();
+        this.ram = source.ram.clone();
+        this.shared = new boolean[ram.length];
+        this.dirty = new boolean[ram.length];
+        Arrays.fill(shared, true);
+        Arrays.fill(source.shared, true);
+    }
+
+    /**
+     * A copy in the same state for a fork of the machine: the ROM image is shared, the RAM pages
+     * are shared until either side writes one. The copy has no save file. The bus of this
+     * cartridge must map its RAM again afterwards (its pages are no longer writable in place).
+     */
+    public Cartridge fork() {
+        return new Cartridge(this);
+    }
+
+    /**
+     * Opens a ROM file, or a ROM inside a zip archive: "games/tetris.gb.zip" takes the first ROM
+     * in it, "games/pack.zip!tetris.gb" the one of that name. A zipped ROM has to be unpacked; it
+     * goes into a direct buffer, off the heap like a mapped one.
+     */
+    public static Cartridge open(String path) throws IOException {
+        int separator = path.indexOf(ARCHIVE_SEPARATOR);
+        String archivePath = separator >= 0 ? path.substring(0, separator) : path;
+        if (separator < 0 && !archivePath.toLowerCase(Locale.ROOT).endsWith(".zip")) return new Cartridge(path);
+
+        File archive = new File(archivePath);
+        try (ZipFile zip = new ZipFile(archive)) {
+            ZipEntry entry = separator >= 0 ? zip.getEntry(path.substring(separator + 1)) : firstRom(zip);
+            if (entry == null) throw new IOException("No ROM in " + path);
+
+            ByteBuffer image;
+            try (InputStream in = zip.getInputStream(entry)) {
+                image = unpack(in, entry.getSize(), path);
+            }
+            String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+            return new Cartridge(new File(archive.getAbsoluteFile().getParentFile(), name), image);
+        }
+    }
+
+    // Reads a zipped ROM to the end into a direct buffer, grown as needed when the archive does
+    // not give the size (or gives a wrong one). Anything past the largest ROM there is fails.
+    private static ByteBuffer unpack(InputStream in, long size, String path) throws IOException {
+        int limit = MAX_ROM_BANKS * BANK_SIZE;
+        ByteBuffer image = ByteBuffer.allocateDirect((int) Math.min(size >= 0 ? size : 2 * BANK_SIZE, limit));
+        byte[] chunk = new byte[0x4000];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+            if (read > image.remaining()) {
+                if (image.position() + read > limit) {
+                    throw new IOException(path + " is larger than " + (limit / 1024 / 1024) + "MB, the largest ROM");
+                }
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(Math.max(2 * image.capacity(),
+                        image.position() + read), limit));
+                image.flip();
+                larger.put(image);
+                image = larger;
+            }
+            image.put(chunk, 0, read);
+        }
+        image.flip();
+        return image;
+    }
+
+    private static ZipEntry firstRom(ZipFile zip) {
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); ) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && isRomName(entry.getName())) return entry;
+        }
+        return null;
+    }
+
+    // Game Boy ROM file names (.gb, .gbc), leaving out the "._" resource forks macOS adds to archives
+    public static boolean isRomName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("__macosx/") || lower.startsWith("._") || lower.contains("/._")) return false;
+        return lower.endsWith(".gb") || lower.endsWith(".gbc");
+    }
+
+    private static ByteBuffer mapRom(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), (long) MAX_ROM_BANKS * BANK_SIZE);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    // Whole banks, read-only; odd-sized images (test ROMs, homebrew) are copied and padded with 0xFF
+    private static ByteBuffer wholeBanks(ByteBuffer image) {
+        int size = image.limit();
+        if (size >= 2 * BANK_SIZE && size % BANK_SIZE == 0 && image.capacity() == size) {
+            return image.isReadOnly() ? image : image.asReadOnlyBuffer();
+        }
+        int banks = Math.max(2, (size + BANK_SIZE - 1) / BANK_SIZE);
+        byte[] padded = new byte[banks * BANK_SIZE];
+        Arrays.fill(padded, (byte) 0xFF);
+        for (int i = 0; i < size; i++) padded[i] = image.get(i);
+        return ByteBuffer.wrap(padded).asReadOnlyBuffer();
+    }
+
+    public CartridgeHeader getHeader() { return header; }
+    public String getTitle() { return header.getTitle(); }
+    // Cartridge type byte of the header (0x147)
+    public int getType() { return header.getType(); }
+    public int getRomBanks() { return romBanks; }
+    public int getRamSize() { return ram.length * 0x100; }
+    public boolean hasBattery() { return header.hasBattery(); }
+
+    // The whole ROM image, read-only; index it with getRomOffset()
+    public ByteBuffer getRom() {
+        return rom;
+    }
+
+    // Where the bank now mapped at 0x0000-0x3FFF (half 0) or 0x4000-0x7FFF (half 1) starts in the image
+    public int getRomOffset(int half) {
+        return (controller.romBank(half) % romBanks) * BANK_SIZE;
+    }
+
+    // RAM bank now mapped at 0xA000-0xBFFF, or -1 if reads and writes there have to go through
+    // readByte() and writeByte() (RAM disabled or missing, clock register selected)
+    public int getRamBank() {
+        return ram.length > 0 ? controller.ramBank() : -1;
+    }
+
+    // Page 0-31 of 0xA000-0xBFFF in the bank now mapped, or null (see getRamBank)
+    public byte[] getRamPage(int page) {
+        int index = ramPageIndex(page);
+        return index >= 0 ? ram[index] : null;
+    }
+
+    // Whether writes to that page can go straight to the array: false if it is shared with a
+    // fork or has to be marked dirty first, and then writes must go through writeByte()
+    public boolean isRamPageWritable(int page) {
+        int index = ramPageIndex(page);
+        return index >= 0 && !shared[index] && (saveFile == null || dirty[index]);
+    }
+
+    // Smaller RAMs (2KB) repeat through the 8KB area
+    private int ramPageIndex(int page) {
+        int bank = getRamBank();
+        return bank < 0 ? -1 : (bank * 0x20 + page) % ram.length;
+    }
+
+    // Time source for the clock of MBC3 cartridges, in CPU cycles
+    public void setClock(LongSupplier clock) {
+        controller.setClock(clock);
+    }
+
+    public int readByte(int address) {
+        if (address < 0x8000) {
+            return rom.get(getRomOffset(address >> 14) + (address & 0x3FFF)) & 0xFF;
+        }
+        if (address >= 0xA000 && address < 0xC000) {
+            int index = ramPageIndex((address >> 8) - 0xA0);
+            return index >= 0 ? ram[index][address & 0xFF] & 0xFF : controller.readRegister();
+        }
+        return 0xFF;
+    }
+
+    // Bank controller registers (0x0000-0x7FFF) and RAM or clock registers (0xA000-0xBFFF)
+    public void writeByte(int address, int value) {
+        if (address < 0x8000) {
+            controller.write(address, value);
+        } else if (address >= 0xA000 && address < 0xC000) {
+            int index = ramPageIndex((address >> 8) - 0xA0);
+            if (index < 0) {
+                controller.writeRegister(value);
+                return;
+            }
+            if (shared[index]) {
+                shared[index] = false;
+                ram[index] = ram[index].clone();
+            }
+            ram[index][address & 0xFF] = (byte) value;
+            if (saveFile != null) dirty[index] = true;
+        }
+    }
+
+    // --- BATTERY ---
+
+    /**
+     * Backs the RAM (and clock) of a battery-backed cartridge with the .sav file next to the ROM,
+     * loading what it holds, or creating it. The format is the raw RAM followed, with a clock, by
+     * the 48-byte footer BGB and VBA-M use, so saves carry over between emulators. Returns false
+     * if the cartridge has nothing to save. Call it before inserting the cartridge into a bus.
+     */
+    public boolean openSaveFile() throws IOException {
+        RealTimeClock clock = controller.getRealTimeClock();
+        int size = ram.length * 0x100 + (clock != null ? RealTimeClock.FOOTER_SIZE : 0);
+        if (!header.hasBattery() || size == 0 || saveFile != null) return false;
+
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        File sav = new File(file.getAbsoluteFile().getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".sav");
+        saveFile = new SaveFile(sav, size);
+
+        long existing = saveFile.getExistingSize();
+        ByteBuffer in = saveFile.at(0);
+        for (int i = 0; i < ram.length && existing >= (i + 1) * 0x100L; i++) {
+            if (shared[i]) {
+                shared[i] = false;
+                ram[i] = new byte[0x100];
+            }
+            in.get(ram[i]);
+        }
+        if (clock != null && existing >= size) {
+            clock.readFooter(saveFile.at(ram.length * 0x100), System.currentTimeMillis() / 1000);
+        }
+        // Whatever was not in the file yet gets written at the first flush
+        Arrays.fill(dirty, existing < size);
+        System.out.println((existing > 0 ? "Loaded " : "Created ") + "save file: " + sav.getName());
+        return true;
+    }
+
+    /**
+     * Called once per frame on the emulation thread: copies the pages written since the last call
+     * into the save file (and the clock, if any did change) and lets the background flusher take
+     * it from there. Returns true if there were any; they are clean again, so the bus must map
+     * the RAM again to catch their next write.
+     */
+    public boolean flushSaveRam() {
+        if (saveFile == null) return false;
+        boolean written = copyDirtyPages();
+        if (!written) return false;
+        Arrays.fill(dirty, false);
+        saveFile.changed();
+        return true;
+    }
+
+    // Writes out what is left and closes the save file. May run on a shutdown hook while the
+    // emulation thread is still going: RAM written after this call is not saved.
+    public void closeSaveFile() {
+        if (saveFile == null) return;
+        copyDirtyPages();
+        saveFile.changed();
+        saveFile.close();
+        System.out.println("Save file written: " + saveFile.getFile().getName() + " (" + saveFile.getForces() + " flushes)");
+    }
+
+    // Dirty pages and the clock footer into the mapping; returns false if no page was dirty
+    private boolean copyDirtyPages() {
+        ByteBuffer out = saveFile.at(0);
+        boolean written = false;
+        for (int i = 0; i < ram.length; i++) {
+            if (!dirty[i]) continue;
+            out.position(i * 0x100);
+            out.put(ram[i]);
+            written = true;
+        }
+        RealTimeClock clock = controller.getRealTimeClock();
+        if (clock != null) {
+            clock.writeFooter(saveFile.at(ram.length * 0x100), System.currentTimeMillis() / 1000);
+        }
+        return written;
+    }
+
+    // --- SAVE STATES ---
+    // Bank controller registers (and clock), then RAM. The ROM is not included.
+
+    // Upper bound of what saveState() writes
+    public int stateSize() {
+        return BankController.STATE_SIZE + ram.length * 0x100;
+    }
+
+    public void saveState(ByteBuffer out) {
+        controller.saveState(out);
+        for (byte[] page : ram) out.put(page);
+    }
+
+    public void loadState(ByteBuffer in) {
+        controller.loadState(in);
+        for (int i = 0; i < ram.length; i++) {
+            if (shared[i]) {
+                shared[i] = false;
+                ram[i] = new byte[0x100];
+            }
+            in.get(ram[i]);
+        }
+        // The battery keeps what was loaded, like anything else the game writes
+        if (saveFile != null) Arrays.fill(dirty, true);
+    }
+}
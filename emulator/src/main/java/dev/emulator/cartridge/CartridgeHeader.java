@@ -0,0 +1,105 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The cartridge header fields at 0x134-0x14F: title, cartridge type (which bank controller,
+ * battery), ROM and RAM size codes, header checksum and global checksum. Kept as those 28 raw
+ * bytes, so it can be read from the first 0x150 bytes of an image and stored as is.
+ */
+public final class CartridgeHeader {
+    // Bytes of an image needed to read the header
+    public static final int END = 0x150;
+    private static final int START = 0x134;
+    public static final int SIZE = END - START;
+
+    private static final int[] RAM_SIZES = {0, 0x800, 0x2000, 0x8000, 0x20000, 0x10000};
+
+    private final byte[] raw;
+
+    // The 28 bytes from 0x134 on, as returned by toBytes()
+    public CartridgeHeader(byte[] raw) {
+        if (raw.length != SIZE) throw new IllegalArgumentException("Header is " + SIZE + " bytes, not " + raw.length);
+        this.raw = raw.clone();
+    }
+
+    // From an image holding at least the first END bytes of a ROM
+    public static CartridgeHeader read(ByteBuffer image) {
+        byte[] raw = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) raw[i] = image.get(START + i);
+        return new CartridgeHeader(raw);
+    }
+
+    public byte[] toBytes() {
+        return raw.clone();
+    }
+
+    private int at(int address) {
+        return raw[address - START] & 0xFF;
+    }
+
+    // Upper-case ASCII padded with zeros, cut short on later cartridges by a manufacturer code
+    // and the CGB flag
+    public String getTitle() {
+        StringBuilder title = new StringBuilder();
+        for (int address = START; address < 0x144; address++) {
+            int c = at(address);
+            if (c < 0x20 || c >= 0x7F) break;
+            title.append((char) c);
+        }
+        return title.toString().trim();
+    }
+
+    public int getType() { return at(0x147); }
+    public int getRomSizeCode() { return at(0x148); }
+    public int getRamSizeCode() { return at(0x149); }
+    public int getHeaderChecksum() { return at(0x14D); }
+    // Sum of every ROM byte but these two; stored only, checking it takes the whole image
+    public int getGlobalChecksum() { return (at(0x14E) << 8) | at(0x14F); }
+
+    // ROM size the header claims (32KB shifted left by the code), or -1 for an unknown code
+    public int getRomSize() {
+        int code = getRomSizeCode();
+        return code <= 8 ? 0x8000 << code : -1;
+    }
+
+    public int getRamSize() {
+        int code = getRamSizeCode();
+        return code < RAM_SIZES.length ? RAM_SIZES[code] : 0;
+    }
+
+    // Whether the checksum over 0x134-0x14C matches (the boot ROM refuses carts where it does not)
+    public boolean isHeaderChecksumValid() {
+        int sum = 0;
+        for (int address = START; address < 0x14D; address++) sum = sum - at(address) - 1;
+        return (sum & 0xFF) == getHeaderChecksum();
+    }
+
+    public boolean hasBattery() {
+        switch (getType()) {
+            case 0x03: case 0x06: case 0x09: case 0x0D: case 0x0F: case 0x10: case 0x13: case 0x1B: case 0x1E:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Bank controller named by the type byte; "none" for plain 32KB cartridges
+    public String getControllerName() {
+        switch (getType()) {
+            case 0x00: case 0x08: case 0x09: return "none";
+            case 0x01: case 0x02: case 0x03: return "MBC1";
+            case 0x05: case 0x06: return "MBC2";
+            case 0x0B: case 0x0C: case 0x0D: return "MMM01";
+            case 0x0F: case 0x10: return "MBC3+RTC";
+            case 0x11: case 0x12: case 0x13: return "MBC3";
+            case 0x19: case 0x1A: case 0x1B: case 0x1C: case 0x1D: case 0x1E: return "MBC5";
+            case 0x20: return "MBC6";
+            case 0x22: return "MBC7";
+            case 0xFC: return "Pocket Camera";
+            case 0xFE: return "HuC3";
+            case 0xFF: return "HuC1";
+            default: return String.format("unknown (0x%02X)", getType());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC1: up to 2MB ROM and 32KB RAM. A 5-bit bank register (0 reads as 1) and a 2-bit one that
+ * supplies either the upper ROM bank bits or the RAM bank; in mode 1 it also banks 0x0000-0x3FFF.
+ */
+final class Mbc1 extends BankController {
+    private int low = 1;
+    private int high;
+    private boolean mode;
+
+    @Override
+    int romBank(int half) {
+        if (half == 0) return mode ? high << 5 : 0;
+        return (high << 5) | low;
+    }
+
+    @Override
+    int ramBank() {
+        if (!ramEnabled) return -1;
+        return mode ? high : 0;
+    }
+
+    @Override
+    void write(int address, int value) {
+        if (address < 0x2000) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (address < 0x4000) {
+            low = value & 0x1F;
+            if (low == 0) low = 1;
+        } else if (address < 0x6000) {
+            high = value & 0x03;
+        } else {
+            mode = (value & 0x01) != 0;
+        }
+    }
+
+    @Override
+    BankController copy() {
+        Mbc1 copy = new Mbc1();
+        copy.ramEnabled = ramEnabled;
+        copy.low = low;
+        copy.high = high;
+        copy.mode = mode;
+        return copy;
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        out.put((byte) low).put((byte) high).put((byte) (mode ? 1 : 0));
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        low = in.get() & 0x1F;
+        high = in.get() & 0x03;
+        mode = in.get() != 0;
+    }
+}
@@ -0,0 +1,100 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * MBC3: up to 2MB ROM (a 7-bit bank number, 0 reads as 1) and 32KB RAM, plus an optional
+ * real-time clock whose registers (0x08-0x0C) are selected in place of a RAM bank.
+ */
+final class Mbc3 extends BankController {
+    // Null on cartridges without a clock
+    private final RealTimeClock rtc;
+    private int romBank = 1;
+    // RAM bank 0-7 or clock register 0x08-0x0C
+    private int select;
+    // Last value written to the latch register (the clock latches on 0 then 1)
+    private int lastLatch = -1;
+
+    Mbc3(boolean hasClock) {
+        this.rtc = hasClock ? new RealTimeClock() : null;
+    }
+
+    private Mbc3(Mbc3 source) {
+        this.rtc = source.rtc != null ? source.rtc.copy() : null;
+        this.ramEnabled = source.ramEnabled;
+        this.romBank = source.romBank;
+        this.select = source.select;
+        this.lastLatch = source.lastLatch;
+    }
+
+    @Override
+    int romBank(int half) {
+        return half == 0 ? 0 : romBank;
+    }
+
+    @Override
+    int ramBank() {
+        return ramEnabled && select < 0x08 ? select : -1;
+    }
+
+    @Override
+    void write(int address, int value) {
+        if (address < 0x2000) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (address < 0x4000) {
+            romBank = value & 0x7F;
+            if (romBank == 0) romBank = 1;
+        } else if (address < 0x6000) {
+            select = value & 0x0F;
+        } else {
+            if (rtc != null && lastLatch == 0 && value == 1) rtc.latch();
+            lastLatch = value;
+        }
+    }
+
+    @Override
+    int readRegister() {
+        return clockSelected() ? rtc.read(select - 0x08) : 0xFF;
+    }
+
+    @Override
+    void writeRegister(int value) {
+        if (clockSelected()) rtc.write(select - 0x08, value);
+    }
+
+    private boolean clockSelected() {
+        return rtc != null && ramEnabled && select >= 0x08 && select <= 0x0C;
+    }
+
+    @Override
+    void setClock(LongSupplier clock) {
+        if (rtc != null) rtc.setClock(clock);
+    }
+
+    @Override
+    RealTimeClock getRealTimeClock() {
+        return rtc;
+    }
+
+    @Override
+    BankController copy() {
+        return new Mbc3(this);
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        out.put((byte) romBank).put((byte) select).put((byte) lastLatch);
+        if (rtc != null) rtc.saveState(out);
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        romBank = in.get() & 0x7F;
+        select = in.get() & 0x0F;
+        lastLatch = in.get();
+        if (rtc != null) rtc.loadState(in);
+    }
+}
@@ -0,0 +1,57 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MBC5: up to 8MB ROM (a 9-bit bank number, bank 0 included) and 128KB RAM in 16 banks.
+ * On rumble cartridges bit 3 of the RAM bank drives the motor, which is simply ignored.
+ */
+final class Mbc5 extends BankController {
+    private int romBank = 1;
+    private int ramBank;
+
+    @Override
+    int romBank(int half) {
+        return half == 0 ? 0 : romBank;
+    }
+
+    @Override
+    int ramBank() {
+        return ramEnabled ? ramBank : -1;
+    }
+
+    @Override
+    void write(int address, int value) {
+        if (address < 0x2000) {
+            ramEnabled = (value & 0x0F) == 0x0A;
+        } else if (address < 0x3000) {
+            romBank = (romBank & 0x100) | value;
+        } else if (address < 0x4000) {
+            romBank = (romBank & 0xFF) | ((value & 0x01) << 8);
+        } else if (address < 0x6000) {
+            ramBank = value & 0x0F;
+        }
+    }
+
+    @Override
+    BankController copy() {
+        Mbc5 copy = new Mbc5();
+        copy.ramEnabled = ramEnabled;
+        copy.romBank = romBank;
+        copy.ramBank = ramBank;
+        return copy;
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        out.putShort((short) romBank).put((byte) ramBank);
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        romBank = in.getShort() & 0x1FF;
+        ramBank = in.get() & 0x0F;
+    }
+}
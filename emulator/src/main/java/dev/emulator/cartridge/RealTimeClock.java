@@ -0,0 +1,153 @@
+package dev.emulator.cartridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.LongSupplier;
+
+/**
+ * The MBC3 real-time clock: seconds, minutes, hours and a 9-bit day counter with a halt bit and
+ * an overflow (carry) bit. It counts emulated time, not host time, so it runs at the emulation
+ * speed and stays deterministic across save states and forks. The game reads a copy of the
+ * registers taken by the latch sequence (writing 0 then 1 to 0x6000-0x7FFF).
+ *
+ * Nothing is ticked: the counter is a number of seconds valid at a given cycle, and is brought
+ * up to date only when the game latches or writes it.
+ */
+final class RealTimeClock {
+    private static final long CYCLES_PER_SECOND = 4194304;
+    private static final long SECONDS_PER_DAY = 86400;
+    // The day counter wraps (and sets carry) after 512 days
+    private static final long WRAP_SECONDS = 512 * SECONDS_PER_DAY;
+
+    // Size of the clock footer of .sav files (see writeFooter)
+    static final int FOOTER_SIZE = 48;
+
+    private LongSupplier clock = () -> 0;
+
+    // Seconds on the counter at cycle `epoch`; while running, one more every CYCLES_PER_SECOND
+    private long seconds;
+    private long epoch;
+    private boolean halted;
+    private boolean carry;
+
+    // S, M, H, DL, DH as of the last latch
+    private final int[] latched = new int[5];
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    void latch() {
+        sync();
+        long days = seconds / SECONDS_PER_DAY;
+        latched[0] = (int) (seconds % 60);
+        latched[1] = (int) (seconds / 60 % 60);
+        latched[2] = (int) (seconds / 3600 % 24);
+        latched[3] = (int) (days & 0xFF);
+        latched[4] = (int) (days >> 8) | (halted ? 0x40 : 0) | (carry ? 0x80 : 0);
+    }
+
+    // Register 0-4 (S, M, H, DL, DH), as latched
+    int read(int register) {
+        return latched[register];
+    }
+
+    // Sets one field of the live counter; writing the seconds also restarts the current second
+    void write(int register, int value) {
+        sync();
+        long s = seconds % 60;
+        long m = seconds / 60 % 60;
+        long h = seconds / 3600 % 24;
+        long days = seconds / SECONDS_PER_DAY;
+        switch (register) {
+            case 0: s = value & 0x3F; epoch = clock.getAsLong(); break;
+            case 1: m = value & 0x3F; break;
+            case 2: h = value & 0x1F; break;
+            case 3: days = (days & 0x100) | value; break;
+            default:
+                days = (days & 0xFF) | ((value & 0x01) << 8);
+                carry = (value & 0x80) != 0;
+                boolean halt = (value & 0x40) != 0;
+                if (halted && !halt) epoch = clock.getAsLong();
+                halted = halt;
+                break;
+        }
+        seconds = days * SECONDS_PER_DAY + h * 3600 + m * 60 + s;
+    }
+
+    // Moves the counter up to now, keeping the fraction of the current second in epoch
+    private void sync() {
+        if (!halted) {
+            long elapsed = (clock.getAsLong() - epoch) / CYCLES_PER_SECOND;
+            seconds += elapsed;
+            epoch += elapsed * CYCLES_PER_SECOND;
+        }
+        if (seconds >= WRAP_SECONDS) {
+            seconds %= WRAP_SECONDS;
+            carry = true;
+        }
+    }
+
+    /**
+     * The footer other emulators (BGB, VBA-M) append to the .sav file of clock cartridges: the
+     * live S, M, H, DL, DH registers, then the latched ones, as little-endian 32-bit words, then
+     * the Unix time they were read at as a 64-bit one. Only reads the clock, so it can be called
+     * while the emulation thread is still running it.
+     */
+    void writeFooter(ByteBuffer out, long unixSeconds) {
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        long counter = halted ? seconds : seconds + (clock.getAsLong() - epoch) / CYCLES_PER_SECOND;
+        boolean overflow = carry || counter >= WRAP_SECONDS;
+        counter %= WRAP_SECONDS;
+        long days = counter / SECONDS_PER_DAY;
+        out.putInt((int) (counter % 60)).putInt((int) (counter / 60 % 60)).putInt((int) (counter / 3600 % 24));
+        out.putInt((int) (days & 0xFF)).putInt((int) (days >> 8) | (halted ? 0x40 : 0) | (overflow ? 0x80 : 0));
+        for (int register : latched) out.putInt(register);
+        out.putLong(unixSeconds);
+    }
+
+    // Sets the clock from a footer, adding the time that passed since it was written unless halted
+    void readFooter(ByteBuffer in, long unixSeconds) {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        long s = in.getInt() & 0x3F;
+        long m = in.getInt() & 0x3F;
+        long h = in.getInt() & 0x1F;
+        long days = in.getInt() & 0xFF;
+        int high = in.getInt();
+        days |= (high & 0x01) << 8;
+        halted = (high & 0x40) != 0;
+        carry = (high & 0x80) != 0;
+        for (int i = 0; i < latched.length; i++) latched[i] = in.getInt() & 0xFF;
+        long savedAt = in.getLong();
+
+        seconds = days * SECONDS_PER_DAY + h * 3600 + m * 60 + s;
+        if (!halted && unixSeconds > savedAt) seconds += unixSeconds - savedAt;
+        epoch = clock.getAsLong();
+        sync();
+    }
+
+    RealTimeClock copy() {
+        RealTimeClock copy = new RealTimeClock();
+        copy.seconds = seconds;
+        copy.epoch = epoch;
+        copy.halted = halted;
+        copy.carry = carry;
+        System.arraycopy(latched, 0, copy.latched, 0, latched.length);
+        return copy;
+    }
+
+    void saveState(ByteBuffer out) {
+        out.putLong(seconds).putLong(epoch);
+        out.put((byte) ((halted ? 1 : 0) | (carry ? 2 : 0)));
+        for (int register : latched) out.put((byte) register);
+    }
+
+    void loadState(ByteBuffer in) {
+        seconds = in.getLong();
+        epoch = in.getLong();
+        int flags = in.get();
+        halted = (flags & 1) != 0;
+        carry = (flags & 2) != 0;
+        for (int i = 0; i < latched.length; i++) latched[i] = in.get() & 0xFF;
+    }
+}
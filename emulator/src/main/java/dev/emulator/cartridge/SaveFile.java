@@ -0,0 +1,108 @@
+package dev.emulator.cartridge;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The .sav file of a battery-backed cartridge, memory-mapped read-write: RAM, then the clock
+ * footer on cartridges that have one.
+ *
+ * The emulation thread only copies changed pages into the mapping, which is plain memory
+ * writes. Getting them to disk is left to a background thread, which forces the mapping at most
+ * once per FLUSH_INTERVAL and only after something changed; the OS then writes back just the
+ * pages that were touched. Even without a force, what was copied in survives the process
+ * exiting, since the mapping is the file's page cache.
+ */
+final class SaveFile {
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final File file;
+    private final MappedByteBuffer mapping;
+    // Bytes the file held before it was opened (it is extended to the full size)
+    private final long existingSize;
+    private final Thread flusher;
+
+    // --- Guarded by this ---
+    private boolean pending;
+    private boolean closed;
+    private long lastForce;
+    private int forces;
+
+    SaveFile(File file, int size) throws IOException {
+        this.file = file;
+        this.existingSize = file.length();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.lastForce = System.nanoTime() - FLUSH_INTERVAL_NANOS;
+
+        flusher = new Thread(this::flushLoop, "Save file flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    File getFile() { return file; }
+    long getExistingSize() { return existingSize; }
+    synchronized int getForces() { return forces; }
+
+    // The mapping from offset on, for reading or writing in place (not shared between threads)
+    ByteBuffer at(int offset) {
+        ByteBuffer view = mapping.duplicate();
+        view.position(offset);
+        return view;
+    }
+
+    // After writing to the mapping: schedule a force (ignored once closed)
+    synchronized void changed() {
+        if (!pending && !closed) {
+            pending = true;
+            notifyAll();
+        }
+    }
+
+    // Forces what is pending one last time and stops the flusher
+    void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    // Until something changed and the last force is old enough, or closing
+                    while (!closed) {
+                        long wait = lastForce + FLUSH_INTERVAL_NANOS - System.nanoTime();
+                        if (pending && wait <= 0) break;
+                        if (pending) {
+                            wait(wait / 1_000_000 + 1);
+                        } else {
+                            wait();
+                        }
+                    }
+                    if (!pending) return;
+                    pending = false;
+                }
+                mapping.force();
+                synchronized (this) {
+                    lastForce = System.nanoTime();
+                    forces++;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Daemon thread: only interrupted when the VM goes down
+        }
+    }
+}
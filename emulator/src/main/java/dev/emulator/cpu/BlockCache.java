@@ -0,0 +1,200 @@
+package dev.emulator.cpu;
+
+import dev.emulator.memory.MemoryBus;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Pre-decoded basic blocks: straight-line runs of instructions ending at the first jump, call,
+ * return, HALT, STOP or EI. Each instruction is decoded once into a packed entry (opcode for the
+ * dispatch switch, immediates, length) so the CPU can run the block without fetching anything
+ * from the bus. Cycle costs stay in the Cpu tables, indexed by the opcode.
+ *
+ * ROM blocks live forever: a block never crosses a 16KB bank boundary, blocks are kept per bank
+ * (the same address decodes to different code once the bank controller maps another bank there,
+ * see {@link MemoryBus#romBankKey}), and forks of the machine share them. Blocks in WRAM and
+ * HRAM never cross a 256-byte page and are dropped as soon as anything writes to their page
+ * (see {@link MemoryBus#watchCode}). Code anywhere else (VRAM, echo RAM, OAM) is not cached.
+ */
+final class BlockCache implements MemoryBus.CodeListener {
+    // Longest block, in instructions
+    private static final int MAX_BLOCK = 32;
+
+    // Instruction length of every base opcode (CB-prefixed ones are 2). 0 = illegal opcode.
+    static final int[] LENGTHS = {
+        1, 3, 1, 1, 1, 1, 2, 1, 3, 1, 1, 1, 1, 1, 2, 1, // 0x0_
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x1_
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x2_
+        2, 3, 1, 1, 1, 1, 2, 1, 2, 1, 1, 1, 1, 1, 2, 1, // 0x3_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x4_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x5_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x6_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x7_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x8_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0x9_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0xA_
+        1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, // 0xB_
+        1, 1, 3, 3, 3, 1, 2, 1, 1, 1, 3, 2, 3, 3, 2, 1, // 0xC_
+        1, 1, 3, 0, 3, 1, 2, 1, 1, 1, 3, 0, 3, 0, 2, 1, // 0xD_
+        2, 1, 1, 0, 0, 1, 2, 1, 2, 1, 3, 0, 0, 0, 2, 1, // 0xE_
+        2, 1, 1, 1, 0, 1, 2, 1, 2, 1, 3, 1, 0, 0, 2, 1  // 0xF_
+    };
+
+    static final class Block {
+        final int start;
+        // One entry per instruction: opcode in bits 0-7, immediates in 8-23, length in 24-25
+        final int[] code;
+        // Most cycles one run can take (the closing branch taken)
+        final int maxCycles;
+        // Cleared when the memory the block was decoded from is overwritten
+        boolean valid = true;
+
+        // Interpreted runs so far, and the compiled form once the block is hot. ROM blocks are
+        // shared with forks, which may run on other threads: runs is a plain counter (a lost
+        // increment only delays compiling) and compiled is set once, by install()
+        int runs;
+        volatile Compiled compiled;
+
+        Block(int start, int[] code) {
+            this.start = start;
+            this.code = code;
+            int total = 0;
+            for (int entry : code) {
+                int opcode = entry & 0xFF;
+                total += Cpu.CYCLES_TAKEN[opcode];
+                if (opcode == 0xCB) total += Cpu.CB_CYCLES[(entry >>> 8) & 0xFF];
+            }
+            this.maxCycles = total;
+        }
+
+        // Sets the compiled form, unless another fork's CPU got there first; true if this one did
+        boolean install(Compiled compiled) {
+            return COMPILED.compareAndSet(this, null, compiled);
+        }
+
+        private static final AtomicReferenceFieldUpdater<Block, Compiled> COMPILED =
+                AtomicReferenceFieldUpdater.newUpdater(Block.class, Compiled.class, "compiled");
+    }
+
+    // A block turned into JVM bytecode by the BlockCompiler
+    interface Compiled {
+        void run(Cpu cpu, Block block);
+    }
+
+    private final MemoryBus bus;
+    // Indexed by the address of the block's first instruction: ROM in one table per bank (and
+    // half of the ROM area), shared with every fork, RAM in one table per 256-byte page. Tables
+    // are allocated when their bank or page first runs code. A block's decoded code is final,
+    // so a fork on another thread that finds it in a shared table sees it whole.
+    private final Block[][] romBlocks;
+    private final Block[][] ramBlocks = new Block[256][];
+    private final int[] scratch = new int[MAX_BLOCK];
+
+    BlockCache(MemoryBus bus) {
+        this(bus, new Block[MemoryBus.ROM_BANK_KEYS][]);
+    }
+
+    private BlockCache(MemoryBus bus, Block[][] romBlocks) {
+        this.bus = bus;
+        this.romBlocks = romBlocks;
+        bus.setCodeListener(this);
+    }
+
+    // A cache for a fork running on bus: same ROM blocks, no RAM ones
+    BlockCache fork(MemoryBus bus) {
+        return new BlockCache(bus, romBlocks);
+    }
+
+    // The block starting at pc, decoding it on first use; null if code there is not cached
+    Block lookup(int pc) {
+        Block[] table;
+        int index;
+        if (pc < 0x8000) {
+            int bank = bus.romBankKey(pc);
+            table = romBlocks[bank];
+            // Forks may race to allocate a table: one wins, the other's blocks get decoded again
+            if (table == null) table = romBlocks[bank] = new Block[0x4000];
+            index = pc & 0x3FFF;
+        } else {
+            table = ramBlocks[pc >> 8];
+            if (table == null) {
+                if (limitFor(pc) < 0) return null;
+                table = ramBlocks[pc >> 8] = new Block[0x100];
+            }
+            index = pc & 0xFF;
+        }
+
+        Block block = table[index];
+        if (block == null) {
+            block = decode(pc);
+            table[index] = block;
+        }
+        return block;
+    }
+
+    @Override
+    public void codeWritten(int page) {
+        Block[] table = ramBlocks[page];
+        if (table == null) return;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                table[i].valid = false;
+                table[i] = null;
+            }
+        }
+    }
+
+    private Block decode(int pc) {
+        int limit = limitFor(pc);
+        if (limit < 0) return null;
+
+        int count = 0;
+        int address = pc;
+        while (count < MAX_BLOCK) {
+            int opcode = bus.readCode(address);
+            int length = LENGTHS[opcode];
+            // Illegal opcodes and instructions running past the limit are left to the slow path
+            if (length == 0 || address + length > limit) break;
+
+            int operand = 0;
+            if (length > 1) operand = bus.readCode(address + 1);
+            if (length > 2) operand |= bus.readCode(address + 2) << 8;
+            scratch[count++] = opcode | (operand << 8) | (length << 24);
+            address += length;
+
+            if (endsBlock(opcode)) break;
+        }
+        if (count == 0) return null;
+
+        // RAM code: a write anywhere in the page now drops the block
+        if (pc >= 0x8000) bus.watchCode(pc >> 8);
+
+        int[] code = new int[count];
+        System.arraycopy(scratch, 0, code, 0, count);
+        return new Block(pc, code);
+    }
+
+    // First address a block starting at pc may not reach into, or -1 if code there is not cached
+    private static int limitFor(int pc) {
+        if (pc < 0x4000) return 0x4000;                    // ROM bank 0
+        if (pc < 0x8000) return 0x8000;                    // Switchable ROM bank
+        if (pc >= 0xC000 && pc < 0xE000) return (pc | 0xFF) + 1; // WRAM, to the end of the page
+        if (pc >= 0xFF80 && pc < 0xFFFF) return 0xFFFF;    // HRAM
+        return -1;
+    }
+
+    // Control flow, and instructions after which an interrupt may have to be taken
+    private static boolean endsBlock(int opcode) {
+        switch (opcode) {
+            case 0x18: case 0x20: case 0x28: case 0x30: case 0x38: // JR
+            case 0xC2: case 0xC3: case 0xCA: case 0xD2: case 0xDA: case 0xE9: // JP
+            case 0xC4: case 0xCC: case 0xCD: case 0xD4: case 0xDC: // CALL
+            case 0xC0: case 0xC8: case 0xC9: case 0xD0: case 0xD8: case 0xD9: // RET, RETI
+            case 0xC7: case 0xCF: case 0xD7: case 0xDF: case 0xE7: case 0xEF: case 0xF7: case 0xFF: // RST
+            case 0x76: case 0x10: case 0xFB: // HALT, STOP, EI
+                return true;
+            default:
+                return false;
+        }
+    }
+}
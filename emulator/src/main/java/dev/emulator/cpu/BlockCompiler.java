@@ -0,0 +1,524 @@
+package dev.emulator.cpu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Second tier above the block interpreter: turns a hot {@link BlockCache.Block} into a small JVM
+ * class with one straight-line method, defined as a hidden nestmate of {@link Cpu} so it can use
+ * the CPU's private fields and helpers directly. HotSpot then compiles each block on its own,
+ * with no fetch, no decode and no dispatch switch left in it.
+ *
+ * Register moves, immediate loads, 8-bit ALU, INC/DEC, CB operations on registers and memory
+ * reads are emitted inline (ALU and CB ops as calls to the CPU's helpers, which HotSpot inlines).
+ * Everything else calls {@link Cpu#executeOpcode} with the pre-decoded immediate. Cycles are
+ * summed and only added to the clock before a memory access, a fallback, and at the end; the
+ * CPU only enters a compiled block when all of it fits before the next hardware event.
+ *
+ * Hidden classes need Java 15+. On older runtimes {@link #create} returns null and the CPU
+ * stays on the block interpreter.
+ */
+final class BlockCompiler {
+    // Runs through the interpreter before a block is compiled. Kept well above HotSpot's own
+    // thresholds so a compiled block soon runs as machine code rather than interpreted bytecode.
+    static final int HOT_RUNS = 1000;
+
+    private static final String CPU = "dev/emulator/cpu/Cpu";
+    private static final String REGISTERS = "dev/emulator/cpu/Registers";
+    private static final String BLOCK = "dev/emulator/cpu/BlockCache$Block";
+    private static final String COMPILED = "dev/emulator/cpu/BlockCache$Compiled";
+    private static final String BUS = "dev/emulator/memory/MemoryBus";
+    private static final String RUN_DESCRIPTOR = "(L" + CPU + ";L" + BLOCK + ";)V";
+
+    // Register operand order in the opcode encoding; null is (HL)
+    private static final String[] REGISTER_FIELDS = {"b", "c", "d", "e", "h", "l", null, "a"};
+    private static final String[] ALU_HELPERS = {"add", "adc", "sub", "sbc", "and", "xor", "or", "cp"};
+    private static final String[] SHIFT_HELPERS = {"rlc", "rrc", "rl", "rr", "sla", "sra", "swap", "srl"};
+
+    private final MethodHandles.Lookup lookup;
+    private final Method defineHiddenClass;
+    private final Object nestmate;
+    // Shared by a machine and all its forks, whatever threads they run on
+    private final AtomicInteger compiledBlocks = new AtomicInteger();
+
+    private BlockCompiler(MethodHandles.Lookup lookup, Method defineHiddenClass, Object nestmate) {
+        this.lookup = lookup;
+        this.defineHiddenClass = defineHiddenClass;
+        this.nestmate = nestmate;
+    }
+
+    // lookup must be the CPU's own (full privilege); null if this runtime has no hidden classes
+    static BlockCompiler create(MethodHandles.Lookup lookup) {
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            Object options = Array.newInstance(option, 1);
+            Array.set(options, 0, option.getField("NESTMATE").get(null));
+            Method define = MethodHandles.Lookup.class.getMethod("defineHiddenClass",
+                    byte[].class, boolean.class, options.getClass());
+            return new BlockCompiler(lookup, define, options);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    int getCompiledBlocks() { return compiledBlocks.get(); }
+
+    // Compiles the block and installs the result in it; a block that cannot be compiled stays
+    // interpreted. Forks may compile the same block at once: only the first one counts.
+    void compile(BlockCache.Block block) {
+        try {
+            byte[] classFile = generate(block);
+            MethodHandles.Lookup hidden = (MethodHandles.Lookup) defineHiddenClass.invoke(lookup, classFile, true, nestmate);
+            BlockCache.Compiled compiled = (BlockCache.Compiled) hidden.lookupClass().getDeclaredConstructor().newInstance();
+            if (block.install(compiled)) compiledBlocks.incrementAndGet();
+        } catch (ReflectiveOperationException | IOException | LinkageError e) {
+            // Stays on the interpreter
+        }
+    }
+
+    private byte[] generate(BlockCache.Block block) throws IOException {
+        ClassFile cf = new ClassFile("dev/emulator/cpu/CompiledBlock");
+        Code code = new Code(cf);
+
+        // Locals: 0 this, 1 cpu, 2 block, 3 registers = cpu.registers
+        code.op(0x2B); // aload_1
+        code.field(0xB4, CPU, "registers", "L" + REGISTERS + ";"); // getfield
+        code.op(0x4E); // astore_3
+
+        int pc = block.start;
+        int pending = 0; // Cycles of the inline instructions not yet added to the clock
+        int[] entries = block.code;
+        for (int i = 0; i < entries.length; i++) {
+            int opcode = entries[i] & 0xFF;
+            int operand = (entries[i] >>> 8) & 0xFFFF;
+            pc = (pc + (entries[i] >>> 24)) & 0xFFFF;
+            boolean last = i == entries.length - 1;
+
+            int cost = emitInline(code, opcode, operand, pending);
+            if (cost >= 0) {
+                // Inline; any memory read in it has already flushed the pending cycles
+                pending = cost;
+                continue;
+            }
+
+            // Fallback: PC past the instruction, clock exact, immediate in place, then dispatch
+            code.setPc(pc);
+            code.addCycles(pending);
+            pending = 0;
+            code.op(0x2B); // aload_1
+            code.pushInt(operand);
+            code.field(0xB5, CPU, "operand", "I"); // putfield
+            code.op(0x2B); // aload_1
+            code.pushInt(opcode);
+            code.method(0xB6, CPU, "executeOpcode", "(I)V"); // invokevirtual
+
+            // It may have written memory: leave where the interpreter would have stopped
+            if (!last) code.leaveIf();
+        }
+
+        code.addCycles(pending);
+        if (emitsInline(entries[entries.length - 1])) code.setPc(pc);
+        code.op(0xB1); // return
+
+        return cf.toBytes(code);
+    }
+
+    private static boolean emitsInline(int entry) throws IOException {
+        return emitInline(null, entry & 0xFF, (entry >>> 8) & 0xFFFF, 0) >= 0;
+    }
+
+    // Emits the instruction inline (code may be null to only ask) and returns the pending cycle
+    // count after it, or -1 if it needs the fallback
+    private static int emitInline(Code code, int opcode, int operand, int pending) throws IOException {
+        int cycles = Cpu.CYCLES[opcode];
+
+        if (opcode == 0x00) return pending + cycles; // NOP
+
+        if (opcode >= 0x40 && opcode < 0x80 && opcode != 0x76) { // LD r, r'
+            String dst = REGISTER_FIELDS[(opcode >> 3) & 7];
+            int src = opcode & 7;
+            if (dst == null) return -1; // LD (HL), r writes memory
+            if (code == null) return 0;
+            if (src == 6) {
+                code.addCycles(pending);
+                pending = 0;
+            }
+            code.op(0x2D); // aload_3
+            code.loadOperand(src);
+            code.field(0xB5, REGISTERS, dst, "I");
+            return pending + cycles;
+        }
+
+        if (opcode >= 0x80 && opcode < 0xC0) { // ALU A, r
+            if (code == null) return 0;
+            int src = opcode & 7;
+            if (src == 6) {
+                code.addCycles(pending);
+                pending = 0;
+            }
+            code.op(0x2B); // aload_1
+            code.loadOperand(src);
+            code.method(0xB6, CPU, ALU_HELPERS[(opcode >> 3) & 7], "(I)V"); // invokevirtual (private, nestmate)
+            return pending + cycles;
+        }
+
+        if ((opcode & 0xC7) == 0xC6) { // ALU A, d8
+            if (code == null) return 0;
+            code.op(0x2B); // aload_1
+            code.pushInt(operand);
+            code.method(0xB6, CPU, ALU_HELPERS[(opcode >> 3) & 7], "(I)V");
+            return pending + cycles;
+        }
+
+        if (opcode < 0x40 && (opcode & 0x06) == 0x04) { // INC r / DEC r
+            String reg = REGISTER_FIELDS[(opcode >> 3) & 7];
+            if (reg == null) return -1; // INC/DEC (HL) writes memory
+            if (code == null) return 0;
+            code.op(0x2D); // aload_3
+            code.op(0x2B); // aload_1
+            code.op(0x2D); // aload_3
+            code.field(0xB4, REGISTERS, reg, "I");
+            code.method(0xB6, CPU, (opcode & 1) == 0 ? "inc" : "dec", "(I)I");
+            code.field(0xB5, REGISTERS, reg, "I");
+            return pending + cycles;
+        }
+
+        if (opcode < 0x40 && (opcode & 0x07) == 0x06) { // LD r, d8
+            String reg = REGISTER_FIELDS[(opcode >> 3) & 7];
+            if (reg == null) return -1; // LD (HL), d8 writes memory
+            if (code == null) return 0;
+            code.op(0x2D); // aload_3
+            code.pushInt(operand);
+            code.field(0xB5, REGISTERS, reg, "I");
+            return pending + cycles;
+        }
+
+        if (opcode < 0x40 && (opcode & 0x0F) == 0x01) { // LD rr, d16
+            if (code == null) return 0;
+            code.op(0x2D); // aload_3
+            code.pushInt(operand);
+            switch (opcode) {
+                case 0x01: code.method(0xB6, REGISTERS, "setBC", "(I)V"); break;
+                case 0x11: code.method(0xB6, REGISTERS, "setDE", "(I)V"); break;
+                case 0x21: code.method(0xB6, REGISTERS, "setHL", "(I)V"); break;
+                default: code.field(0xB5, REGISTERS, "sp", "I"); break;
+            }
+            return pending + cycles;
+        }
+
+        if (opcode == 0xF0 || opcode == 0xFA) { // LDH A, (a8) / LD A, (a16)
+            if (code == null) return 0;
+            code.addCycles(pending);
+            code.op(0x2D); // aload_3
+            code.op(0x2B); // aload_1
+            code.field(0xB4, CPU, "bus", "L" + BUS + ";");
+            code.pushInt(opcode == 0xF0 ? 0xFF00 | operand : operand);
+            code.method(0xB6, BUS, "readByte", "(I)I");
+            code.field(0xB5, REGISTERS, "a", "I");
+            return cycles;
+        }
+
+        if (opcode == 0xCB) { // CB page, register operands only
+            int cb = operand & 0xFF;
+            String reg = REGISTER_FIELDS[cb & 7];
+            if (reg == null) return -1;
+            if (code == null) return 0;
+            int bit = (cb >> 3) & 7;
+            switch (cb >> 6) {
+                case 0: // Rotates, shifts, SWAP
+                    code.op(0x2D); // aload_3
+                    code.op(0x2B); // aload_1
+                    code.op(0x2D); // aload_3
+                    code.field(0xB4, REGISTERS, reg, "I");
+                    code.method(0xB6, CPU, SHIFT_HELPERS[bit], "(I)I");
+                    code.field(0xB5, REGISTERS, reg, "I");
+                    break;
+                case 1: // BIT
+                    code.op(0x2B); // aload_1
+                    code.pushInt(bit);
+                    code.op(0x2D); // aload_3
+                    code.field(0xB4, REGISTERS, reg, "I");
+                    code.method(0xB6, CPU, "bit", "(II)V");
+                    break;
+                default: // RES, SET
+                    code.op(0x2D); // aload_3
+                    code.op(0x59); // dup
+                    code.field(0xB4, REGISTERS, reg, "I");
+                    code.pushInt((cb >> 6) == 2 ? ~(1 << bit) : 1 << bit);
+                    code.op((cb >> 6) == 2 ? 0x7E : 0x80); // iand / ior
+                    code.field(0xB5, REGISTERS, reg, "I");
+                    break;
+            }
+            return pending + cycles + Cpu.CB_CYCLES[cb];
+        }
+
+        return -1;
+    }
+
+    // --- CLASS FILE WRITER ---
+    // Just enough of the class file format for one final class with a constructor and run()
+
+    private static final class ClassFile {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int poolCount = 1;
+
+        final int thisClass;
+        final int objectClass;
+        final int compiledInterface;
+        final int objectInit;
+
+        ClassFile(String name) throws IOException {
+            thisClass = classRef(name);
+            objectClass = classRef("java/lang/Object");
+            compiledInterface = classRef(COMPILED);
+            objectInit = methodRef("java/lang/Object", "<init>", "()V");
+        }
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index != null) return index;
+            pool.writeByte(1);
+            pool.writeUTF(value);
+            return add("U" + value, 1);
+        }
+
+        int integer(int value) throws IOException {
+            Integer index = entries.get("I" + value);
+            if (index != null) return index;
+            pool.writeByte(3);
+            pool.writeInt(value);
+            return add("I" + value, 1);
+        }
+
+        int classRef(String name) throws IOException {
+            Integer index = entries.get("C" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            pool.writeByte(7);
+            pool.writeShort(nameIndex);
+            return add("C" + name, 1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            pool.writeByte(12); // NameAndType
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+            int nameAndType = poolCount++;
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+            return add(key, 1);
+        }
+
+        private int add(String key, int slots) {
+            int index = poolCount;
+            poolCount += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        byte[] toBytes(Code run) throws IOException {
+            int codeName = utf8("Code");
+            int frameTableName = utf8("StackMapTable");
+            int initName = utf8("<init>");
+            int initDescriptor = utf8("()V");
+            int runName = utf8("run");
+            int runDescriptor = utf8(RUN_DESCRIPTOR);
+            int registersClass = classRef(REGISTERS);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(59); // Java 15, the first with hidden classes
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(compiledInterface);
+            out.writeShort(0); // No fields
+            out.writeShort(2); // Methods
+
+            // public <init>() { super(); }
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + 5);
+            out.writeShort(1); // max_stack
+            out.writeShort(1); // max_locals
+            out.writeInt(5);
+            out.writeByte(0x2A); // aload_0
+            out.writeByte(0xB7); // invokespecial
+            out.writeShort(objectInit);
+            out.writeByte(0xB1); // return
+            out.writeShort(0);
+            out.writeShort(0);
+
+            // public void run(Cpu cpu, Block block)
+            byte[] body = run.bytes.toByteArray();
+            byte[] frames = run.frameTable(registersClass);
+            out.writeShort(0x0001);
+            out.writeShort(runName);
+            out.writeShort(runDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length + (frames == null ? 0 : 6 + frames.length));
+            out.writeShort(8); // max_stack
+            out.writeShort(4); // max_locals: this, cpu, block, registers
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // No exception table
+            if (frames == null) {
+                out.writeShort(0);
+            } else {
+                out.writeShort(1);
+                out.writeShort(frameTableName);
+                out.writeInt(frames.length);
+                out.write(frames);
+            }
+
+            out.writeShort(0); // No class attributes
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Code {
+        private final ClassFile cf;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Bytecode offsets of the branch targets, each needing a stack map frame
+        private final List<Integer> targets = new ArrayList<>();
+
+        Code(ClassFile cf) {
+            this.cf = cf;
+        }
+
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) throws IOException {
+            op(opcode);
+            u2(cf.fieldRef(owner, name, descriptor));
+        }
+
+        void method(int opcode, String owner, String name, String descriptor) throws IOException {
+            op(opcode);
+            u2(cf.methodRef(owner, name, descriptor));
+        }
+
+        void pushInt(int value) throws IOException {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value); // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(0x10); // bipush
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(0x11); // sipush
+                u2(value);
+            } else {
+                op(0x13); // ldc_w
+                u2(cf.integer(value));
+            }
+        }
+
+        // Pushes register r of an instruction's operand encoding; (HL) reads memory
+        void loadOperand(int r) throws IOException {
+            if (r == 6) {
+                op(0x2B); // aload_1
+                method(0xB6, CPU, "readHL", "()I");
+            } else {
+                op(0x2D); // aload_3
+                field(0xB4, REGISTERS, REGISTER_FIELDS[r], "I");
+            }
+        }
+
+        // cpu.cycles += cycles
+        void addCycles(int cycles) throws IOException {
+            if (cycles == 0) return;
+            op(0x2B); // aload_1
+            op(0x59); // dup
+            field(0xB4, CPU, "cycles", "J");
+            pushInt(cycles);
+            op(0x85); // i2l
+            op(0x61); // ladd
+            field(0xB5, CPU, "cycles", "J");
+        }
+
+        // registers.pc = pc
+        void setPc(int pc) throws IOException {
+            op(0x2D); // aload_3
+            pushInt(pc);
+            field(0xB5, REGISTERS, "pc", "I");
+        }
+
+        // if (cpu.mustLeave(block)) return;
+        void leaveIf() throws IOException {
+            op(0x2B); // aload_1
+            op(0x2C); // aload_2
+            method(0xB6, CPU, "mustLeave", "(L" + BLOCK + ";)Z");
+            op(0x99); // ifeq over the return
+            u2(4);
+            op(0xB1); // return
+            targets.add(bytes.size());
+        }
+
+        // StackMapTable: every target has locals [this, cpu, block, registers] and an empty stack
+        byte[] frameTable(int registersClass) throws IOException {
+            if (targets.isEmpty()) return null;
+            ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(frameBytes);
+            out.writeShort(targets.size());
+            int previous = -1;
+            for (int target : targets) {
+                int delta = target - previous - 1;
+                if (previous < 0) {
+                    out.writeByte(252); // append_frame, one more local
+                    out.writeShort(delta);
+                    out.writeByte(7); // Object_variable_info
+                    out.writeShort(registersClass);
+                } else if (delta < 64) {
+                    out.writeByte(delta); // same_frame
+                } else {
+                    out.writeByte(251); // same_frame_extended
+                    out.writeShort(delta);
+                }
+                previous = target;
+            }
+            return frameBytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,1252 @@
+package dev.emulator.cpu;
+
+import dev.emulator.display.FrameSink;
+import dev.emulator.hardware.InterruptManager;
+import dev.emulator.hardware.Scheduler;
+import dev.emulator.memory.MemoryBus;
+import dev.emulator.profile.ExecutionCounters;
+import dev.emulator.profile.HotspotSampler;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+
+public class Cpu {
+    // --- CYCLE TABLES ---
+    // Cost of every base opcode (branches: not taken). 0 = illegal opcode.
+    static final int[] CYCLES = {
+         4, 12,  8,  8,  4,  4,  8,  4, 20,  8,  8,  8,  4,  4,  8,  4, // 0x0_
+         4, 12,  8,  8,  4,  4,  8,  4, 12,  8,  8,  8,  4,  4,  8,  4, // 0x1_
+         8, 12,  8,  8,  4,  4,  8,  4,  8,  8,  8,  8,  4,  4,  8,  4, // 0x2_
+         8, 12,  8,  8, 12, 12, 12,  4,  8,  8,  8,  8,  4,  4,  8,  4, // 0x3_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x4_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x5_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x6_
+         8,  8,  8,  8,  8,  8,  4,  8,  4,  4,  4,  4,  4,  4,  8,  4, // 0x7_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x8_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x9_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0xA_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0xB_
+         8, 12, 12, 16, 12, 16,  8, 16,  8, 16, 12,  4, 12, 24,  8, 16, // 0xC_
+         8, 12, 12,  0, 12, 16,  8, 16,  8, 16, 12,  0, 12,  0,  8, 16, // 0xD_
+        12, 12,  8,  0,  0, 16,  8, 16, 16,  4, 16,  0,  0,  0,  8, 16, // 0xE_
+        12, 12,  8,  4,  0, 16,  8, 16, 12,  8, 16,  4,  0,  0,  8, 16  // 0xF_
+    };
+
+    // Cost of every base opcode when its branch is taken (same as CYCLES for everything else)
+    static final int[] CYCLES_TAKEN = {
+         4, 12,  8,  8,  4,  4,  8,  4, 20,  8,  8,  8,  4,  4,  8,  4, // 0x0_
+         4, 12,  8,  8,  4,  4,  8,  4, 12,  8,  8,  8,  4,  4,  8,  4, // 0x1_
+        12, 12,  8,  8,  4,  4,  8,  4, 12,  8,  8,  8,  4,  4,  8,  4, // 0x2_
+        12, 12,  8,  8, 12, 12, 12,  4, 12,  8,  8,  8,  4,  4,  8,  4, // 0x3_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x4_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x5_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x6_
+         8,  8,  8,  8,  8,  8,  4,  8,  4,  4,  4,  4,  4,  4,  8,  4, // 0x7_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x8_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x9_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0xA_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0xB_
+        20, 12, 16, 16, 24, 16,  8, 16, 20, 16, 16,  4, 24, 24,  8, 16, // 0xC_
+        20, 12, 16,  0, 24, 16,  8, 16, 20, 16, 16,  0, 24,  0,  8, 16, // 0xD_
+        12, 12,  8,  0,  0, 16,  8, 16, 16,  4, 16,  0,  0,  0,  8, 16, // 0xE_
+        12, 12,  8,  4,  0, 16,  8, 16, 12,  8, 16,  4,  0,  0,  8, 16  // 0xF_
+    };
+
+    // Cost of every CB-prefixed opcode, on top of the 4 cycles of the 0xCB prefix itself
+    static final int[] CB_CYCLES = {
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x0_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x1_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x2_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x3_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x4_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x5_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x6_
+         4,  4,  4,  4,  4,  4,  8,  4,  4,  4,  4,  4,  4,  4,  8,  4, // 0x7_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x8_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0x9_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0xA_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0xB_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0xC_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0xD_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4, // 0xE_
+         4,  4,  4,  4,  4,  4, 12,  4,  4,  4,  4,  4,  4,  4, 12,  4  // 0xF_
+    };
+
+    private Registers registers;
+    private MemoryBus bus;
+    private Scheduler scheduler;
+    private InterruptManager interrupts;
+    public long cycles;
+
+    // Pre-decoded code, and the immediates (d8, d16, e8, a16, CB opcode) of the current instruction
+    private final BlockCache blocks;
+    int operand;
+
+    // Compiles hot blocks to bytecode; null when disabled or not supported by the runtime
+    private BlockCompiler compiler;
+
+    // Set by HALT, cleared as soon as any enabled interrupt is pending
+    private boolean halted;
+
+    // The bus's, or null unless ExecutionCounters.ENABLED
+    private final ExecutionCounters counters;
+    // Null unless HotspotSampler.ENABLED
+    private final HotspotSampler sampler;
+
+    // Polling loops whose passes can be skipped, and how much emulated time that saved
+    private final IdleLoopDetector idleLoops;
+    private long idleCyclesSkipped;
+    // Where the last backward branch landed and when; a pass only counts as a clean sample of an
+    // idle loop if it ran from there straight back to the branch with no event firing in between
+    private int loopStart = -1;
+    private long loopArrival;
+    private long lastEvent;
+
+    public Cpu(MemoryBus bus) {
+        this.bus = bus;
+        this.scheduler = bus.getScheduler();
+        this.interrupts = bus.getInterruptManager();
+        this.registers = new Registers();
+        this.blocks = new BlockCache(bus);
+        this.compiler = createCompiler();
+        this.counters = bus.getCounters();
+        this.sampler = HotspotSampler.ENABLED ? new HotspotSampler(bus, 0) : null;
+        this.idleLoops = new IdleLoopDetector(bus);
+        this.cycles = 0;
+
+        // The CPU owns the master clock the hardware catches up to
+        scheduler.setClock(() -> cycles);
+    }
+
+    // See fork()
+    private Cpu(Cpu source, MemoryBus bus) {
+        this.bus = bus;
+        this.scheduler = bus.getScheduler();
+        this.interrupts = bus.getInterruptManager();
+        this.registers = new Registers(source.registers);
+        this.blocks = source.blocks.fork(bus);
+        this.compiler = source.compiler;
+        this.counters = bus.getCounters();
+        this.idleLoops = new IdleLoopDetector(bus, source.idleLoops);
+        this.cycles = source.cycles;
+        this.sampler = HotspotSampler.ENABLED ? new HotspotSampler(bus, cycles) : null;
+        this.halted = source.halted;
+        this.lastEvent = cycles;
+
+        scheduler.setClock(() -> cycles);
+    }
+
+    /**
+     * An independent machine in exactly this one's state, e.g. to branch a search: the bus and
+     * all hardware are forked too (see {@link MemoryBus#fork}, RAM is shared copy-on-write) and
+     * the child draws into display. What was learnt about the ROM (decoded and compiled blocks,
+     * idle loops) is shared, so the child runs at full speed from the start; compiled blocks
+     * are counted once for the whole family. Call it between two step()s on this CPU's thread;
+     * the child can then run on any thread, alongside this machine and its other forks.
+     */
+    public Cpu fork(FrameSink display) {
+        return new Cpu(this, bus.fork(display));
+    }
+
+    public MemoryBus getBus() { return bus; }
+    public Registers getRegisters() { return registers; }
+    public boolean isHalted() { return halted; }
+    public long getIdleCyclesSkipped() { return idleCyclesSkipped; }
+    public int getCompiledBlocks() { return compiler != null ? compiler.getCompiledBlocks() : 0; }
+    public HotspotSampler getSampler() { return sampler; }
+
+    // Blocks already compiled keep running compiled; no new ones are compiled once disabled
+    public void setJitEnabled(boolean enabled) {
+        if (!enabled) {
+            compiler = null;
+        } else if (compiler == null) {
+            compiler = createCompiler();
+        }
+    }
+
+    // Compiled blocks run past executeOpcode() and the sample points, so there is none while
+    // counting opcodes or sampling
+    private static BlockCompiler createCompiler() {
+        if (ExecutionCounters.ENABLED || HotspotSampler.ENABLED) return null;
+        return BlockCompiler.create(MethodHandles.lookup());
+    }
+
+    // Registers, the clock and HALT. Everything decoded or compiled stays: the bus tells the
+    // block cache about RAM that changed under it, and ROM does not change.
+    public void saveState(ByteBuffer out) {
+        registers.saveState(out);
+        out.putLong(cycles);
+        out.put((byte) (halted ? 1 : 0));
+    }
+
+    public void loadState(ByteBuffer in) {
+        registers.loadState(in);
+        cycles = in.getLong();
+        halted = in.get() != 0;
+        // Idle loop samples taken before the load say nothing about the loaded state
+        loopStart = -1;
+        lastEvent = cycles;
+        if (HotspotSampler.ENABLED) sampler.restart(cycles);
+    }
+
+    public void step() {
+        if (HotspotSampler.ENABLED) sampler.tick(registers.pc, cycles);
+
+        // 1. Handle Interrupts (a pending one also ends HALT)
+        if (!handleInterrupts()) {
+            if (halted) {
+                // Nothing to execute: the next thing that can change is the next hardware event
+                idleUntilNextEvent();
+                return;
+            }
+
+            // 2. Fetch: a whole pre-decoded block if the code is cached, else one instruction
+            BlockCache.Block block = blocks.lookup(registers.pc);
+            if (block != null) {
+                runBlock(block);
+            } else {
+                // 3. Decode & Execute
+                executeOpcode(decode());
+            }
+        }
+
+        // 4. Sync Hardware (only when one of its events is due)
+        if (cycles >= scheduler.nextDeadline()) {
+            scheduler.runUntil(cycles);
+            lastEvent = cycles;
+        }
+    }
+
+    // While halted, fast-forward straight to the next scheduled event instead of spinning 4 cycles
+    // at a time. With nothing scheduled (LCD and timer off) only the joypad can wake the CPU.
+    private void idleUntilNextEvent() {
+        long next = scheduler.nextDeadline();
+        if (next == Scheduler.NEVER) {
+            cycles += 4;
+        } else {
+            cycles = Math.max(next, cycles + 4);
+            scheduler.runUntil(cycles);
+        }
+    }
+
+    // Runs a pre-decoded block, stopping early wherever step() would have done something between
+    // instructions: a hardware event is due, an interrupt can be taken, or the block was overwritten
+    private void runBlock(BlockCache.Block block) {
+        // Compiled code only checks in after memory writes, so all of it must fit before the next event
+        BlockCache.Compiled compiled = block.compiled;
+        if (compiled != null) {
+            if (cycles + block.maxCycles <= scheduler.nextDeadline()) {
+                compiled.run(this, block);
+                return;
+            }
+        } else if (compiler != null && ++block.runs == BlockCompiler.HOT_RUNS) {
+            compiler.compile(block);
+        }
+
+        int[] code = block.code;
+        for (int i = 0; ; ) {
+            if (HotspotSampler.ENABLED) sampler.tick(registers.pc, cycles);
+            int entry = code[i];
+            operand = (entry >>> 8) & 0xFFFF;
+            registers.pc = (registers.pc + (entry >>> 24)) & 0xFFFF;
+            executeOpcode(entry & 0xFF);
+
+            if (++i == code.length || mustLeave(block)) return;
+        }
+    }
+
+    // Whether step() has something to do before the next instruction of the block
+    boolean mustLeave(BlockCache.Block block) {
+        return cycles >= scheduler.nextDeadline() || !block.valid || (registers.isIme() && interruptPending());
+    }
+
+    // Reads the instruction at PC and its immediates from the bus and moves PC past it
+    private int decode() {
+        int pc = registers.pc;
+        int opcode = bus.readCode(pc);
+        int length = BlockCache.LENGTHS[opcode];
+        if (length > 1) operand = bus.readCode((pc + 1) & 0xFFFF);
+        if (length > 2) operand |= bus.readCode((pc + 2) & 0xFFFF) << 8;
+        registers.pc = (pc + Math.max(length, 1)) & 0xFFFF;
+        return opcode;
+    }
+
+    private boolean interruptPending() {
+        return (interrupts.getInterruptEnable() & interrupts.getInterruptFlag() & 0x1F) != 0;
+    }
+
+    // Table-driven dispatch: the cycle cost comes from CYCLES, the handler from a dense switch
+    // (javac emits a tableswitch, i.e. a jump table). The 256 opcodes are split into their four
+    // 64-entry quarters so each method stays small enough for the JIT to inline its helpers.
+    // Cycles are charged after the handler runs, so the hardware sees memory accesses at the
+    // time the instruction started (it is only brought up to date between instructions).
+    void executeOpcode(int opcode) {
+        long start = cycles;
+        long skipped = idleCyclesSkipped;
+        switch (opcode >> 6) {
+            case 0: executeMisc(opcode); break;
+            case 1: executeLoad(opcode); break;
+            case 2: executeAlu(opcode); break;
+            default: executeControl(opcode); break;
+        }
+
+        cycles += CYCLES[opcode];
+        // The opcode's own cost: idle loop passes skipped by a branch belong to no opcode, and
+        // the instruction HALT runs twice (HALT bug) has already been counted on its own
+        if (ExecutionCounters.ENABLED) {
+            long own = opcode == 0x76 ? CYCLES[opcode] : cycles - start - (idleCyclesSkipped - skipped);
+            counters.countOpcode(opcode, own);
+        }
+    }
+
+    // 0x00-0x3F: 16-bit loads, INC/DEC, immediates, relative jumps, accumulator rotates
+    private void executeMisc(int opcode) {
+        switch (opcode) {
+            case 0x00: break; // NOP
+            case 0x01: registers.setBC(readWord()); break; // LD BC, d16
+            case 0x02: bus.writeByte(registers.getBC(), registers.a); break; // LD (BC), A
+            case 0x03: registers.setBC((registers.getBC() + 1) & 0xFFFF); break; // INC BC
+            case 0x04: registers.b = inc(registers.b); break; // INC B
+            case 0x05: registers.b = dec(registers.b); break; // DEC B
+            case 0x06: registers.b = readByte(); break; // LD B, d8
+            case 0x07: rlca(); break; // RLCA
+            case 0x08: writeWord(readWord(), registers.sp); break; // LD (a16), SP
+            case 0x09: addHL(registers.getBC()); break; // ADD HL, BC
+            case 0x0A: registers.a = bus.readByte(registers.getBC()); break; // LD A, (BC)
+            case 0x0B: registers.setBC((registers.getBC() - 1) & 0xFFFF); break; // DEC BC
+            case 0x0C: registers.c = inc(registers.c); break; // INC C
+            case 0x0D: registers.c = dec(registers.c); break; // DEC C
+            case 0x0E: registers.c = readByte(); break; // LD C, d8
+            case 0x0F: rrca(); break; // RRCA
+            case 0x10: break; // STOP (treated as a 2-byte NOP)
+            case 0x11: registers.setDE(readWord()); break; // LD DE, d16
+            case 0x12: bus.writeByte(registers.getDE(), registers.a); break; // LD (DE), A
+            case 0x13: registers.setDE((registers.getDE() + 1) & 0xFFFF); break; // INC DE
+            case 0x14: registers.d = inc(registers.d); break; // INC D
+            case 0x15: registers.d = dec(registers.d); break; // DEC D
+            case 0x16: registers.d = readByte(); break; // LD D, d8
+            case 0x17: rla(); break; // RLA
+            case 0x18: jr(true, opcode); break; // JR e8
+            case 0x19: addHL(registers.getDE()); break; // ADD HL, DE
+            case 0x1A: registers.a = bus.readByte(registers.getDE()); break; // LD A, (DE)
+            case 0x1B: registers.setDE((registers.getDE() - 1) & 0xFFFF); break; // DEC DE
+            case 0x1C: registers.e = inc(registers.e); break; // INC E
+            case 0x1D: registers.e = dec(registers.e); break; // DEC E
+            case 0x1E: registers.e = readByte(); break; // LD E, d8
+            case 0x1F: rra(); break; // RRA
+            case 0x20: jr(!getZ(), opcode); break; // JR NZ, e8
+            case 0x21: registers.setHL(readWord()); break; // LD HL, d16
+            case 0x22: writeHL(registers.a); registers.setHL((registers.getHL() + 1) & 0xFFFF); break; // LD (HL+), A
+            case 0x23: registers.setHL((registers.getHL() + 1) & 0xFFFF); break; // INC HL
+            case 0x24: registers.h = inc(registers.h); break; // INC H
+            case 0x25: registers.h = dec(registers.h); break; // DEC H
+            case 0x26: registers.h = readByte(); break; // LD H, d8
+            case 0x27: handleDAA(); break; // DAA
+            case 0x28: jr(getZ(), opcode); break; // JR Z, e8
+            case 0x29: addHL(registers.getHL()); break; // ADD HL, HL
+            case 0x2A: registers.a = readHL(); registers.setHL((registers.getHL() + 1) & 0xFFFF); break; // LD A, (HL+)
+            case 0x2B: registers.setHL((registers.getHL() - 1) & 0xFFFF); break; // DEC HL
+            case 0x2C: registers.l = inc(registers.l); break; // INC L
+            case 0x2D: registers.l = dec(registers.l); break; // DEC L
+            case 0x2E: registers.l = readByte(); break; // LD L, d8
+            case 0x2F: cpl(); break; // CPL
+            case 0x30: jr(!getC(), opcode); break; // JR NC, e8
+            case 0x31: registers.sp = readWord(); break; // LD SP, d16
+            case 0x32: writeHL(registers.a); registers.setHL((registers.getHL() - 1) & 0xFFFF); break; // LD (HL-), A
+            case 0x33: registers.sp = (registers.sp + 1) & 0xFFFF; break; // INC SP
+            case 0x34: writeHL(inc(readHL())); break; // INC (HL)
+            case 0x35: writeHL(dec(readHL())); break; // DEC (HL)
+            case 0x36: writeHL(readByte()); break; // LD (HL), d8
+            case 0x37: scf(); break; // SCF
+            case 0x38: jr(getC(), opcode); break; // JR C, e8
+            case 0x39: addHL(registers.sp); break; // ADD HL, SP
+            case 0x3A: registers.a = readHL(); registers.setHL((registers.getHL() - 1) & 0xFFFF); break; // LD A, (HL-)
+            case 0x3B: registers.sp = (registers.sp - 1) & 0xFFFF; break; // DEC SP
+            case 0x3C: registers.a = inc(registers.a); break; // INC A
+            case 0x3D: registers.a = dec(registers.a); break; // DEC A
+            case 0x3E: registers.a = readByte(); break; // LD A, d8
+            case 0x3F: ccf(); break; // CCF
+        }
+    }
+
+    // 0x40-0x7F: LD r, r' (and HALT)
+    private void executeLoad(int opcode) {
+        switch (opcode) {
+            case 0x40: break; // LD B, B
+            case 0x41: registers.b = registers.c; break;
+            case 0x42: registers.b = registers.d; break;
+            case 0x43: registers.b = registers.e; break;
+            case 0x44: registers.b = registers.h; break;
+            case 0x45: registers.b = registers.l; break;
+            case 0x46: registers.b = readHL(); break;
+            case 0x47: registers.b = registers.a; break;
+            case 0x48: registers.c = registers.b; break;
+            case 0x49: break; // LD C, C
+            case 0x4A: registers.c = registers.d; break;
+            case 0x4B: registers.c = registers.e; break;
+            case 0x4C: registers.c = registers.h; break;
+            case 0x4D: registers.c = registers.l; break;
+            case 0x4E: registers.c = readHL(); break;
+            case 0x4F: registers.c = registers.a; break;
+            case 0x50: registers.d = registers.b; break;
+            case 0x51: registers.d = registers.c; break;
+            case 0x52: break; // LD D, D
+            case 0x53: registers.d = registers.e; break;
+            case 0x54: registers.d = registers.h; break;
+            case 0x55: registers.d = registers.l; break;
+            case 0x56: registers.d = readHL(); break;
+            case 0x57: registers.d = registers.a; break;
+            case 0x58: registers.e = registers.b; break;
+            case 0x59: registers.e = registers.c; break;
+            case 0x5A: registers.e = registers.d; break;
+            case 0x5B: break; // LD E, E
+            case 0x5C: registers.e = registers.h; break;
+            case 0x5D: registers.e = registers.l; break;
+            case 0x5E: registers.e = readHL(); break;
+            case 0x5F: registers.e = registers.a; break;
+            case 0x60: registers.h = registers.b; break;
+            case 0x61: registers.h = registers.c; break;
+            case 0x62: registers.h = registers.d; break;
+            case 0x63: registers.h = registers.e; break;
+            case 0x64: break; // LD H, H
+            case 0x65: registers.h = registers.l; break;
+            case 0x66: registers.h = readHL(); break;
+            case 0x67: registers.h = registers.a; break;
+            case 0x68: registers.l = registers.b; break;
+            case 0x69: registers.l = registers.c; break;
+            case 0x6A: registers.l = registers.d; break;
+            case 0x6B: registers.l = registers.e; break;
+            case 0x6C: registers.l = registers.h; break;
+            case 0x6D: break; // LD L, L
+            case 0x6E: registers.l = readHL(); break;
+            case 0x6F: registers.l = registers.a; break;
+            case 0x70: writeHL(registers.b); break;
+            case 0x71: writeHL(registers.c); break;
+            case 0x72: writeHL(registers.d); break;
+            case 0x73: writeHL(registers.e); break;
+            case 0x74: writeHL(registers.h); break;
+            case 0x75: writeHL(registers.l); break;
+            case 0x76: halt(); break; // HALT
+            case 0x77: writeHL(registers.a); break;
+            case 0x78: registers.a = registers.b; break;
+            case 0x79: registers.a = registers.c; break;
+            case 0x7A: registers.a = registers.d; break;
+            case 0x7B: registers.a = registers.e; break;
+            case 0x7C: registers.a = registers.h; break;
+            case 0x7D: registers.a = registers.l; break;
+            case 0x7E: registers.a = readHL(); break;
+            case 0x7F: break; // LD A, A
+        }
+    }
+
+    // 0x80-0xBF: ADD/ADC/SUB/SBC/AND/XOR/OR/CP A, r
+    private void executeAlu(int opcode) {
+        switch (opcode) {
+            case 0x80: add(registers.b); break;
+            case 0x81: add(registers.c); break;
+            case 0x82: add(registers.d); break;
+            case 0x83: add(registers.e); break;
+            case 0x84: add(registers.h); break;
+            case 0x85: add(registers.l); break;
+            case 0x86: add(readHL()); break;
+            case 0x87: add(registers.a); break;
+            case 0x88: adc(registers.b); break;
+            case 0x89: adc(registers.c); break;
+            case 0x8A: adc(registers.d); break;
+            case 0x8B: adc(registers.e); break;
+            case 0x8C: adc(registers.h); break;
+            case 0x8D: adc(registers.l); break;
+            case 0x8E: adc(readHL()); break;
+            case 0x8F: adc(registers.a); break;
+            case 0x90: sub(registers.b); break;
+            case 0x91: sub(registers.c); break;
+            case 0x92: sub(registers.d); break;
+            case 0x93: sub(registers.e); break;
+            case 0x94: sub(registers.h); break;
+            case 0x95: sub(registers.l); break;
+            case 0x96: sub(readHL()); break;
+            case 0x97: sub(registers.a); break;
+            case 0x98: sbc(registers.b); break;
+            case 0x99: sbc(registers.c); break;
+            case 0x9A: sbc(registers.d); break;
+            case 0x9B: sbc(registers.e); break;
+            case 0x9C: sbc(registers.h); break;
+            case 0x9D: sbc(registers.l); break;
+            case 0x9E: sbc(readHL()); break;
+            case 0x9F: sbc(registers.a); break;
+            case 0xA0: and(registers.b); break;
+            case 0xA1: and(registers.c); break;
+            case 0xA2: and(registers.d); break;
+            case 0xA3: and(registers.e); break;
+            case 0xA4: and(registers.h); break;
+            case 0xA5: and(registers.l); break;
+            case 0xA6: and(readHL()); break;
+            case 0xA7: and(registers.a); break;
+            case 0xA8: xor(registers.b); break;
+            case 0xA9: xor(registers.c); break;
+            case 0xAA: xor(registers.d); break;
+            case 0xAB: xor(registers.e); break;
+            case 0xAC: xor(registers.h); break;
+            case 0xAD: xor(registers.l); break;
+            case 0xAE: xor(readHL()); break;
+            case 0xAF: xor(registers.a); break;
+            case 0xB0: or(registers.b); break;
+            case 0xB1: or(registers.c); break;
+            case 0xB2: or(registers.d); break;
+            case 0xB3: or(registers.e); break;
+            case 0xB4: or(registers.h); break;
+            case 0xB5: or(registers.l); break;
+            case 0xB6: or(readHL()); break;
+            case 0xB7: or(registers.a); break;
+            case 0xB8: cp(registers.b); break;
+            case 0xB9: cp(registers.c); break;
+            case 0xBA: cp(registers.d); break;
+            case 0xBB: cp(registers.e); break;
+            case 0xBC: cp(registers.h); break;
+            case 0xBD: cp(registers.l); break;
+            case 0xBE: cp(readHL()); break;
+            case 0xBF: cp(registers.a); break;
+        }
+    }
+
+    // 0xC0-0xFF: calls, returns, jumps, stack, I/O loads, immediate ALU, CB prefix
+    private void executeControl(int opcode) {
+        switch (opcode) {
+            case 0xC0: ret(!getZ(), opcode); break; // RET NZ
+            case 0xC1: registers.setBC(pop()); break; // POP BC
+            case 0xC2: jp(!getZ(), opcode); break; // JP NZ, a16
+            case 0xC3: jp(true, opcode); break; // JP a16
+            case 0xC4: call(!getZ(), opcode); break; // CALL NZ, a16
+            case 0xC5: push(registers.getBC()); break; // PUSH BC
+            case 0xC6: add(readByte()); break; // ADD d8
+            case 0xC7: rst(0x00); break; // RST 00H
+            case 0xC8: ret(getZ(), opcode); break; // RET Z
+            case 0xC9: registers.pc = popReturn(); break; // RET
+            case 0xCA: jp(getZ(), opcode); break; // JP Z, a16
+            case 0xCB: executeExtendedOpcode(); break; // PREFIX CB
+            case 0xCC: call(getZ(), opcode); break; // CALL Z, a16
+            case 0xCD: call(true, opcode); break; // CALL a16
+            case 0xCE: adc(readByte()); break; // ADC d8
+            case 0xCF: rst(0x08); break; // RST 08H
+            case 0xD0: ret(!getC(), opcode); break; // RET NC
+            case 0xD1: registers.setDE(pop()); break; // POP DE
+            case 0xD2: jp(!getC(), opcode); break; // JP NC, a16
+            case 0xD4: call(!getC(), opcode); break; // CALL NC, a16
+            case 0xD5: push(registers.getDE()); break; // PUSH DE
+            case 0xD6: sub(readByte()); break; // SUB d8
+            case 0xD7: rst(0x10); break; // RST 10H
+            case 0xD8: ret(getC(), opcode); break; // RET C
+            case 0xD9: registers.setIme(true); registers.pc = popReturn(); break; // RETI
+            case 0xDA: jp(getC(), opcode); break; // JP C, a16
+            case 0xDC: call(getC(), opcode); break; // CALL C, a16
+            case 0xDE: sbc(readByte()); break; // SBC d8
+            case 0xDF: rst(0x18); break; // RST 18H
+            case 0xE0: bus.writeByte(0xFF00 | readByte(), registers.a); break; // LDH (a8), A
+            case 0xE1: registers.setHL(pop()); break; // POP HL
+            case 0xE2: bus.writeByte(0xFF00 | registers.c, registers.a); break; // LD (C), A
+            case 0xE5: push(registers.getHL()); break; // PUSH HL
+            case 0xE6: and(readByte()); break; // AND d8
+            case 0xE7: rst(0x20); break; // RST 20H
+            case 0xE8: registers.sp = addSP(readByteSigned()); break; // ADD SP, e8
+            case 0xE9: registers.pc = registers.getHL(); break; // JP (HL)
+            case 0xEA: bus.writeByte(readWord(), registers.a); break; // LD (a16), A
+            case 0xEE: xor(readByte()); break; // XOR d8
+            case 0xEF: rst(0x28); break; // RST 28H
+            case 0xF0: registers.a = bus.readByte(0xFF00 | readByte()); break; // LDH A, (a8)
+            case 0xF1: registers.setAF(pop()); break; // POP AF
+            case 0xF2: registers.a = bus.readByte(0xFF00 | registers.c); break; // LD A, (C)
+            case 0xF3: registers.setIme(false); break; // DI
+            case 0xF5: push(registers.getAF()); break; // PUSH AF
+            case 0xF6: or(readByte()); break; // OR d8
+            case 0xF7: rst(0x30); break; // RST 30H
+            case 0xF8: registers.setHL(addSP(readByteSigned())); break; // LD HL, SP+e8
+            case 0xF9: registers.sp = registers.getHL(); break; // LD SP, HL
+            case 0xFA: registers.a = bus.readByte(readWord()); break; // LD A, (a16)
+            case 0xFB: registers.setIme(true); break; // EI
+            case 0xFE: cp(readByte()); break; // CP d8
+            case 0xFF: rst(0x38); break; // RST 38H
+            default:
+                throw new IllegalStateException(String.format("Unknown Opcode: 0x%02X at 0x%04X", opcode, registers.pc - 1));
+        }
+    }
+
+    private void executeExtendedOpcode() {
+        int op = readByte();
+
+        switch (op) {
+            case 0x00: registers.b = rlc(registers.b); break;
+            case 0x01: registers.c = rlc(registers.c); break;
+            case 0x02: registers.d = rlc(registers.d); break;
+            case 0x03: registers.e = rlc(registers.e); break;
+            case 0x04: registers.h = rlc(registers.h); break;
+            case 0x05: registers.l = rlc(registers.l); break;
+            case 0x06: writeHL(rlc(readHL())); break;
+            case 0x07: registers.a = rlc(registers.a); break;
+            case 0x08: registers.b = rrc(registers.b); break;
+            case 0x09: registers.c = rrc(registers.c); break;
+            case 0x0A: registers.d = rrc(registers.d); break;
+            case 0x0B: registers.e = rrc(registers.e); break;
+            case 0x0C: registers.h = rrc(registers.h); break;
+            case 0x0D: registers.l = rrc(registers.l); break;
+            case 0x0E: writeHL(rrc(readHL())); break;
+            case 0x0F: registers.a = rrc(registers.a); break;
+            case 0x10: registers.b = rl(registers.b); break;
+            case 0x11: registers.c = rl(registers.c); break;
+            case 0x12: registers.d = rl(registers.d); break;
+            case 0x13: registers.e = rl(registers.e); break;
+            case 0x14: registers.h = rl(registers.h); break;
+            case 0x15: registers.l = rl(registers.l); break;
+            case 0x16: writeHL(rl(readHL())); break;
+            case 0x17: registers.a = rl(registers.a); break;
+            case 0x18: registers.b = rr(registers.b); break;
+            case 0x19: registers.c = rr(registers.c); break;
+            case 0x1A: registers.d = rr(registers.d); break;
+            case 0x1B: registers.e = rr(registers.e); break;
+            case 0x1C: registers.h = rr(registers.h); break;
+            case 0x1D: registers.l = rr(registers.l); break;
+            case 0x1E: writeHL(rr(readHL())); break;
+            case 0x1F: registers.a = rr(registers.a); break;
+            case 0x20: registers.b = sla(registers.b); break;
+            case 0x21: registers.c = sla(registers.c); break;
+            case 0x22: registers.d = sla(registers.d); break;
+            case 0x23: registers.e = sla(registers.e); break;
+            case 0x24: registers.h = sla(registers.h); break;
+            case 0x25: registers.l = sla(registers.l); break;
+            case 0x26: writeHL(sla(readHL())); break;
+            case 0x27: registers.a = sla(registers.a); break;
+            case 0x28: registers.b = sra(registers.b); break;
+            case 0x29: registers.c = sra(registers.c); break;
+            case 0x2A: registers.d = sra(registers.d); break;
+            case 0x2B: registers.e = sra(registers.e); break;
+            case 0x2C: registers.h = sra(registers.h); break;
+            case 0x2D: registers.l = sra(registers.l); break;
+            case 0x2E: writeHL(sra(readHL())); break;
+            case 0x2F: registers.a = sra(registers.a); break;
+            case 0x30: registers.b = swap(registers.b); break;
+            case 0x31: registers.c = swap(registers.c); break;
+            case 0x32: registers.d = swap(registers.d); break;
+            case 0x33: registers.e = swap(registers.e); break;
+            case 0x34: registers.h = swap(registers.h); break;
+            case 0x35: registers.l = swap(registers.l); break;
+            case 0x36: writeHL(swap(readHL())); break;
+            case 0x37: registers.a = swap(registers.a); break;
+            case 0x38: registers.b = srl(registers.b); break;
+            case 0x39: registers.c = srl(registers.c); break;
+            case 0x3A: registers.d = srl(registers.d); break;
+            case 0x3B: registers.e = srl(registers.e); break;
+            case 0x3C: registers.h = srl(registers.h); break;
+            case 0x3D: registers.l = srl(registers.l); break;
+            case 0x3E: writeHL(srl(readHL())); break;
+            case 0x3F: registers.a = srl(registers.a); break;
+            case 0x40: bit(0, registers.b); break;
+            case 0x41: bit(0, registers.c); break;
+            case 0x42: bit(0, registers.d); break;
+            case 0x43: bit(0, registers.e); break;
+            case 0x44: bit(0, registers.h); break;
+            case 0x45: bit(0, registers.l); break;
+            case 0x46: bit(0, readHL()); break;
+            case 0x47: bit(0, registers.a); break;
+            case 0x48: bit(1, registers.b); break;
+            case 0x49: bit(1, registers.c); break;
+            case 0x4A: bit(1, registers.d); break;
+            case 0x4B: bit(1, registers.e); break;
+            case 0x4C: bit(1, registers.h); break;
+            case 0x4D: bit(1, registers.l); break;
+            case 0x4E: bit(1, readHL()); break;
+            case 0x4F: bit(1, registers.a); break;
+            case 0x50: bit(2, registers.b); break;
+            case 0x51: bit(2, registers.c); break;
+            case 0x52: bit(2, registers.d); break;
+            case 0x53: bit(2, registers.e); break;
+            case 0x54: bit(2, registers.h); break;
+            case 0x55: bit(2, registers.l); break;
+            case 0x56: bit(2, readHL()); break;
+            case 0x57: bit(2, registers.a); break;
+            case 0x58: bit(3, registers.b); break;
+            case 0x59: bit(3, registers.c); break;
+            case 0x5A: bit(3, registers.d); break;
+            case 0x5B: bit(3, registers.e); break;
+            case 0x5C: bit(3, registers.h); break;
+            case 0x5D: bit(3, registers.l); break;
+            case 0x5E: bit(3, readHL()); break;
+            case 0x5F: bit(3, registers.a); break;
+            case 0x60: bit(4, registers.b); break;
+            case 0x61: bit(4, registers.c); break;
+            case 0x62: bit(4, registers.d); break;
+            case 0x63: bit(4, registers.e); break;
+            case 0x64: bit(4, registers.h); break;
+            case 0x65: bit(4, registers.l); break;
+            case 0x66: bit(4, readHL()); break;
+            case 0x67: bit(4, registers.a); break;
+            case 0x68: bit(5, registers.b); break;
+            case 0x69: bit(5, registers.c); break;
+            case 0x6A: bit(5, registers.d); break;
+            case 0x6B: bit(5, registers.e); break;
+            case 0x6C: bit(5, registers.h); break;
+            case 0x6D: bit(5, registers.l); break;
+            case 0x6E: bit(5, readHL()); break;
+            case 0x6F: bit(5, registers.a); break;
+            case 0x70: bit(6, registers.b); break;
+            case 0x71: bit(6, registers.c); break;
+            case 0x72: bit(6, registers.d); break;
+            case 0x73: bit(6, registers.e); break;
+            case 0x74: bit(6, registers.h); break;
+            case 0x75: bit(6, registers.l); break;
+            case 0x76: bit(6, readHL()); break;
+            case 0x77: bit(6, registers.a); break;
+            case 0x78: bit(7, registers.b); break;
+            case 0x79: bit(7, registers.c); break;
+            case 0x7A: bit(7, registers.d); break;
+            case 0x7B: bit(7, registers.e); break;
+            case 0x7C: bit(7, registers.h); break;
+            case 0x7D: bit(7, registers.l); break;
+            case 0x7E: bit(7, readHL()); break;
+            case 0x7F: bit(7, registers.a); break;
+            case 0x80: registers.b &= ~(1 << 0); break;
+            case 0x81: registers.c &= ~(1 << 0); break;
+            case 0x82: registers.d &= ~(1 << 0); break;
+            case 0x83: registers.e &= ~(1 << 0); break;
+            case 0x84: registers.h &= ~(1 << 0); break;
+            case 0x85: registers.l &= ~(1 << 0); break;
+            case 0x86: writeHL(readHL() & ~(1 << 0)); break;
+            case 0x87: registers.a &= ~(1 << 0); break;
+            case 0x88: registers.b &= ~(1 << 1); break;
+            case 0x89: registers.c &= ~(1 << 1); break;
+            case 0x8A: registers.d &= ~(1 << 1); break;
+            case 0x8B: registers.e &= ~(1 << 1); break;
+            case 0x8C: registers.h &= ~(1 << 1); break;
+            case 0x8D: registers.l &= ~(1 << 1); break;
+            case 0x8E: writeHL(readHL() & ~(1 << 1)); break;
+            case 0x8F: registers.a &= ~(1 << 1); break;
+            case 0x90: registers.b &= ~(1 << 2); break;
+            case 0x91: registers.c &= ~(1 << 2); break;
+            case 0x92: registers.d &= ~(1 << 2); break;
+            case 0x93: registers.e &= ~(1 << 2); break;
+            case 0x94: registers.h &= ~(1 << 2); break;
+            case 0x95: registers.l &= ~(1 << 2); break;
+            case 0x96: writeHL(readHL() & ~(1 << 2)); break;
+            case 0x97: registers.a &= ~(1 << 2); break;
+            case 0x98: registers.b &= ~(1 << 3); break;
+            case 0x99: registers.c &= ~(1 << 3); break;
+            case 0x9A: registers.d &= ~(1 << 3); break;
+            case 0x9B: registers.e &= ~(1 << 3); break;
+            case 0x9C: registers.h &= ~(1 << 3); break;
+            case 0x9D: registers.l &= ~(1 << 3); break;
+            case 0x9E: writeHL(readHL() & ~(1 << 3)); break;
+            case 0x9F: registers.a &= ~(1 << 3); break;
+            case 0xA0: registers.b &= ~(1 << 4); break;
+            case 0xA1: registers.c &= ~(1 << 4); break;
+            case 0xA2: registers.d &= ~(1 << 4); break;
+            case 0xA3: registers.e &= ~(1 << 4); break;
+            case 0xA4: registers.h &= ~(1 << 4); break;
+            case 0xA5: registers.l &= ~(1 << 4); break;
+            case 0xA6: writeHL(readHL() & ~(1 << 4)); break;
+            case 0xA7: registers.a &= ~(1 << 4); break;
+            case 0xA8: registers.b &= ~(1 << 5); break;
+            case 0xA9: registers.c &= ~(1 << 5); break;
+            case 0xAA: registers.d &= ~(1 << 5); break;
+            case 0xAB: registers.e &= ~(1 << 5); break;
+            case 0xAC: registers.h &= ~(1 << 5); break;
+            case 0xAD: registers.l &= ~(1 << 5); break;
+            case 0xAE: writeHL(readHL() & ~(1 << 5)); break;
+            case 0xAF: registers.a &= ~(1 << 5); break;
+            case 0xB0: registers.b &= ~(1 << 6); break;
+            case 0xB1: registers.c &= ~(1 << 6); break;
+            case 0xB2: registers.d &= ~(1 << 6); break;
+            case 0xB3: registers.e &= ~(1 << 6); break;
+            case 0xB4: registers.h &= ~(1 << 6); break;
+            case 0xB5: registers.l &= ~(1 << 6); break;
+            case 0xB6: writeHL(readHL() & ~(1 << 6)); break;
+            case 0xB7: registers.a &= ~(1 << 6); break;
+            case 0xB8: registers.b &= ~(1 << 7); break;
+            case 0xB9: registers.c &= ~(1 << 7); break;
+            case 0xBA: registers.d &= ~(1 << 7); break;
+            case 0xBB: registers.e &= ~(1 << 7); break;
+            case 0xBC: registers.h &= ~(1 << 7); break;
+            case 0xBD: registers.l &= ~(1 << 7); break;
+            case 0xBE: writeHL(readHL() & ~(1 << 7)); break;
+            case 0xBF: registers.a &= ~(1 << 7); break;
+            case 0xC0: registers.b |= 1 << 0; break;
+            case 0xC1: registers.c |= 1 << 0; break;
+            case 0xC2: registers.d |= 1 << 0; break;
+            case 0xC3: registers.e |= 1 << 0; break;
+            case 0xC4: registers.h |= 1 << 0; break;
+            case 0xC5: registers.l |= 1 << 0; break;
+            case 0xC6: writeHL(readHL() | (1 << 0)); break;
+            case 0xC7: registers.a |= 1 << 0; break;
+            case 0xC8: registers.b |= 1 << 1; break;
+            case 0xC9: registers.c |= 1 << 1; break;
+            case 0xCA: registers.d |= 1 << 1; break;
+            case 0xCB: registers.e |= 1 << 1; break;
+            case 0xCC: registers.h |= 1 << 1; break;
+            case 0xCD: registers.l |= 1 << 1; break;
+            case 0xCE: writeHL(readHL() | (1 << 1)); break;
+            case 0xCF: registers.a |= 1 << 1; break;
+            case 0xD0: registers.b |= 1 << 2; break;
+            case 0xD1: registers.c |= 1 << 2; break;
+            case 0xD2: registers.d |= 1 << 2; break;
+            case 0xD3: registers.e |= 1 << 2; break;
+            case 0xD4: registers.h |= 1 << 2; break;
+            case 0xD5: registers.l |= 1 << 2; break;
+            case 0xD6: writeHL(readHL() | (1 << 2)); break;
+            case 0xD7: registers.a |= 1 << 2; break;
+            case 0xD8: registers.b |= 1 << 3; break;
+            case 0xD9: registers.c |= 1 << 3; break;
+            case 0xDA: registers.d |= 1 << 3; break;
+            case 0xDB: registers.e |= 1 << 3; break;
+            case 0xDC: registers.h |= 1 << 3; break;
+            case 0xDD: registers.l |= 1 << 3; break;
+            case 0xDE: writeHL(readHL() | (1 << 3)); break;
+            case 0xDF: registers.a |= 1 << 3; break;
+            case 0xE0: registers.b |= 1 << 4; break;
+            case 0xE1: registers.c |= 1 << 4; break;
+            case 0xE2: registers.d |= 1 << 4; break;
+            case 0xE3: registers.e |= 1 << 4; break;
+            case 0xE4: registers.h |= 1 << 4; break;
+            case 0xE5: registers.l |= 1 << 4; break;
+            case 0xE6: writeHL(readHL() | (1 << 4)); break;
+            case 0xE7: registers.a |= 1 << 4; break;
+            case 0xE8: registers.b |= 1 << 5; break;
+            case 0xE9: registers.c |= 1 << 5; break;
+            case 0xEA: registers.d |= 1 << 5; break;
+            case 0xEB: registers.e |= 1 << 5; break;
+            case 0xEC: registers.h |= 1 << 5; break;
+            case 0xED: registers.l |= 1 << 5; break;
+            case 0xEE: writeHL(readHL() | (1 << 5)); break;
+            case 0xEF: registers.a |= 1 << 5; break;
+            case 0xF0: registers.b |= 1 << 6; break;
+            case 0xF1: registers.c |= 1 << 6; break;
+            case 0xF2: registers.d |= 1 << 6; break;
+            case 0xF3: registers.e |= 1 << 6; break;
+            case 0xF4: registers.h |= 1 << 6; break;
+            case 0xF5: registers.l |= 1 << 6; break;
+            case 0xF6: writeHL(readHL() | (1 << 6)); break;
+            case 0xF7: registers.a |= 1 << 6; break;
+            case 0xF8: registers.b |= 1 << 7; break;
+            case 0xF9: registers.c |= 1 << 7; break;
+            case 0xFA: registers.d |= 1 << 7; break;
+            case 0xFB: registers.e |= 1 << 7; break;
+            case 0xFC: registers.h |= 1 << 7; break;
+            case 0xFD: registers.l |= 1 << 7; break;
+            case 0xFE: writeHL(readHL() | (1 << 7)); break;
+            case 0xFF: registers.a |= 1 << 7; break;
+        }
+
+        cycles += CB_CYCLES[op];
+        if (ExecutionCounters.ENABLED) counters.countCbOpcode(op, 4 + CB_CYCLES[op]);
+    }
+
+    // --- HELPERS ---
+
+    private int readHL() {
+        return bus.readByte(registers.getHL());
+    }
+
+    private void writeHL(int val) {
+        bus.writeByte(registers.getHL(), val);
+    }
+
+    // Immediates were fetched with the opcode, and PC already points past them
+    private int readByte() {
+        return operand & 0xFF;
+    }
+
+    private int readByteSigned() {
+        return (byte) operand;
+    }
+
+    private int readWord() {
+        return operand;
+    }
+
+    private void writeWord(int addr, int val) {
+        bus.writeByte(addr, val & 0xFF);
+        bus.writeByte((addr + 1) & 0xFFFF, (val >> 8) & 0xFF);
+    }
+
+    private void push(int val) {
+        registers.sp = (registers.sp - 1) & 0xFFFF;
+        bus.writeByte(registers.sp, (val >> 8) & 0xFF);
+        registers.sp = (registers.sp - 1) & 0xFFFF;
+        bus.writeByte(registers.sp, val & 0xFF);
+    }
+
+    private int pop() {
+        int low = bus.readByte(registers.sp);
+        registers.sp = (registers.sp + 1) & 0xFFFF;
+        int high = bus.readByte(registers.sp);
+        registers.sp = (registers.sp + 1) & 0xFFFF;
+        return (high << 8) | low;
+    }
+
+    // --- CONTROL FLOW ---
+    // The operands are always consumed; a taken branch pays the difference to CYCLES_TAKEN.
+
+    private void jr(boolean condition, int opcode) {
+        int offset = readByteSigned();
+        if (condition) {
+            int end = registers.pc;
+            registers.pc = (end + offset) & 0xFFFF;
+            cycles += CYCLES_TAKEN[opcode] - CYCLES[opcode];
+            if (offset < 0) skipIdleLoop(registers.pc, end, opcode);
+        }
+    }
+
+    private void jp(boolean condition, int opcode) {
+        int addr = readWord();
+        if (condition) {
+            int end = registers.pc;
+            registers.pc = addr;
+            cycles += CYCLES_TAKEN[opcode] - CYCLES[opcode];
+            if (addr < end) skipIdleLoop(addr, end, opcode);
+        }
+    }
+
+    // Backward branch taken: if it closes an idle loop, skip every whole pass that would finish
+    // before the next hardware event, since nothing the loop reads can change until then
+    private void skipIdleLoop(int start, int end, int opcode) {
+        // This branch is charged CYCLES[opcode] once the handler returns
+        long passEnd = cycles + CYCLES[opcode];
+        long arrival = loopArrival;
+        boolean sameLoop = loopStart == start;
+        loopStart = start;
+        loopArrival = passEnd;
+
+        int passCycles = idleLoops.cyclesPerPass(start, end);
+        if (passCycles == 0) return;
+
+        // The pass that just ended is only representative if it started at the top of the loop
+        // (not inside it, after an interrupt handler returned) and saw no event: the exact pass
+        // length rules out anything else having run in between
+        if (!sameLoop || passEnd - arrival != passCycles || lastEvent > arrival) return;
+
+        // An interrupt about to be serviced would leave the loop
+        if (registers.isIme() && interruptPending()) return;
+
+        long deadline = scheduler.nextDeadline();
+        if (deadline == Scheduler.NEVER) return;
+
+        long skipped = (deadline - passEnd) / passCycles * passCycles;
+        if (skipped > 0) {
+            cycles += skipped;
+            loopArrival += skipped;
+            idleCyclesSkipped += skipped;
+        }
+    }
+
+    private void call(boolean condition, int opcode) {
+        int addr = readWord();
+        if (condition) {
+            push(registers.pc);
+            registers.pc = addr;
+            cycles += CYCLES_TAKEN[opcode] - CYCLES[opcode];
+            if (HotspotSampler.ENABLED) sampler.enter(addr, registers.sp);
+        }
+    }
+
+    private void ret(boolean condition, int opcode) {
+        if (condition) {
+            registers.pc = popReturn();
+            cycles += CYCLES_TAKEN[opcode] - CYCLES[opcode];
+        }
+    }
+
+    private void rst(int vector) {
+        push(registers.pc);
+        registers.pc = vector;
+        if (HotspotSampler.ENABLED) sampler.enter(vector, registers.sp);
+    }
+
+    // RET, RETI: the sampler's call stack is unwound to the frame being returned to
+    private int popReturn() {
+        if (HotspotSampler.ENABLED) sampler.leave(registers.sp);
+        return pop();
+    }
+
+    // HALT: sleep until an interrupt is pending (IE & IF), whether or not IME lets it be serviced
+    private void halt() {
+        if (!interruptPending()) {
+            halted = true;
+        } else if (!registers.isIme()) {
+            // HALT bug: with IME off and an interrupt already pending the CPU does not halt, and
+            // PC fails to advance past the next opcode, so that byte is executed twice (as the
+            // opcode, then as the first byte of its own immediates)
+            int pc = registers.pc;
+            int opcode = bus.readCode(pc);
+            operand = opcode | (bus.readCode((pc + 1) & 0xFFFF) << 8);
+            registers.pc = (pc + Math.max(BlockCache.LENGTHS[opcode], 1) - 1) & 0xFFFF;
+            executeOpcode(opcode);
+        }
+        // IME on and an interrupt pending: no halt at all, it is serviced right away
+    }
+
+    // --- 16-BIT ARITHMETIC ---
+
+    private void addHL(int value) {
+        int hl = registers.getHL();
+        int result = hl + value;
+        // H: Carry from bit 11 (moved down to bit 4). C: Carry from bit 15 (moved down to bit 8).
+        // N is Reset. Z is Preserved.
+        registers.flagN = 0;
+        registers.flagH = (hl ^ value ^ result) >> 8;
+        registers.flagC = result >> 8;
+        registers.setHL(result & 0xFFFF);
+    }
+
+    // SP + e8, shared by ADD SP, e8 and LD HL, SP+e8 (H and C come from the low byte)
+    private int addSP(int offset) {
+        int sp = registers.sp;
+        int result = sp + offset;
+        int carries = sp ^ offset ^ result;
+        registers.flagZ = 1;
+        registers.flagN = 0;
+        registers.flagH = carries;
+        registers.flagC = carries;
+        return result & 0xFFFF;
+    }
+
+    // --- 8-BIT ARITHMETIC ---
+    // Z/H/C are left as raw results and operands; see Registers for how they are read back.
+
+    private int inc(int val) {
+        int res = val + 1;
+        registers.flagZ = res;
+        registers.flagN = 0;
+        registers.flagH = val ^ res;
+        return res & 0xFF;
+    }
+
+    private int dec(int val) {
+        int res = val - 1;
+        registers.flagZ = res;
+        registers.flagN = 1;
+        registers.flagH = val ^ res;
+        return res & 0xFF;
+    }
+
+    private void add(int val) {
+        int a = registers.a;
+        int res = a + val;
+        setArithmeticFlags(a, val, res, 0);
+        registers.a = res & 0xFF;
+    }
+
+    private void adc(int val) {
+        int a = registers.a;
+        int res = a + val + ((registers.flagC >> 8) & 1);
+        setArithmeticFlags(a, val, res, 0);
+        registers.a = res & 0xFF;
+    }
+
+    private void sub(int val) {
+        int a = registers.a;
+        int res = a - val;
+        setArithmeticFlags(a, val, res, 1);
+        registers.a = res & 0xFF;
+    }
+
+    private void sbc(int val) {
+        int a = registers.a;
+        int res = a - val - ((registers.flagC >> 8) & 1);
+        setArithmeticFlags(a, val, res, 1);
+        registers.a = res & 0xFF;
+    }
+
+    private void and(int val) {
+        registers.a &= val;
+        setLogicFlags(registers.a, 0x10);
+    }
+
+    private void xor(int val) {
+        registers.a ^= val;
+        setLogicFlags(registers.a, 0);
+    }
+
+    private void or(int val) {
+        registers.a |= val;
+        setLogicFlags(registers.a, 0);
+    }
+
+    private void cp(int val) {
+        int a = registers.a;
+        setArithmeticFlags(a, val, a - val, 1);
+    }
+
+    // --- ROTATES & FLIPS (Accumulator): Z=0, N=0, H=0 ---
+
+    private void rlca() {
+        int a = registers.a;
+        registers.a = ((a << 1) | (a >> 7)) & 0xFF;
+        setRotateFlags(1, a << 1);
+    }
+
+    private void rrca() {
+        int a = registers.a;
+        registers.a = ((a >> 1) | (a << 7)) & 0xFF;
+        setRotateFlags(1, a << 8);
+    }
+
+    private void rla() { // Rotate Left through Carry
+        int a = registers.a;
+        registers.a = ((a << 1) | ((registers.flagC >> 8) & 1)) & 0xFF;
+        setRotateFlags(1, a << 1);
+    }
+
+    private void rra() { // Rotate Right through Carry
+        int a = registers.a;
+        registers.a = (a >> 1) | ((registers.flagC >> 1) & 0x80);
+        setRotateFlags(1, a << 8);
+    }
+
+    // --- CARRY / BCD / CPL ---
+
+    private void cpl() { // Complement A: N=1, H=1
+        registers.a = (~registers.a) & 0xFF;
+        registers.flagN = 1;
+        registers.flagH = 0x10;
+    }
+
+    private void scf() { // Set Carry Flag: N=0, H=0, C=1
+        registers.flagN = 0;
+        registers.flagH = 0;
+        registers.flagC = 0x100;
+    }
+
+    private void ccf() { // Complement Carry Flag: N=0, H=0, C=!C
+        registers.flagN = 0;
+        registers.flagH = 0;
+        registers.flagC ^= 0x100;
+    }
+
+    private void handleDAA() {
+        // One of the few readers of N and H, so they get materialized here
+        int a = registers.a;
+        boolean n = registers.flagN != 0;
+        boolean h = (registers.flagH & 0x10) != 0;
+        boolean c = getC();
+
+        if (!n) { // Addition
+            if (c || a > 0x99) { a += 0x60; c = true; }
+            if (h || (a & 0x0F) > 0x09) { a += 0x06; }
+        } else { // Subtraction
+            if (c) { a -= 0x60; }
+            if (h) { a -= 0x06; }
+        }
+
+        a &= 0xFF;
+        registers.flagZ = a;
+        registers.flagH = 0;
+        registers.flagC = c ? 0x100 : 0;
+        registers.a = a;
+    }
+
+    // --- CB PAGE: ROTATES / SHIFTS / SWAP (Z from result, N=0, H=0) ---
+
+    private int rlc(int val) {
+        int res = ((val << 1) | (val >> 7)) & 0xFF;
+        setRotateFlags(res, val << 1);
+        return res;
+    }
+
+    private int rrc(int val) {
+        int res = ((val >> 1) | (val << 7)) & 0xFF;
+        setRotateFlags(res, val << 8);
+        return res;
+    }
+
+    private int rl(int val) {
+        int res = ((val << 1) | ((registers.flagC >> 8) & 1)) & 0xFF;
+        setRotateFlags(res, val << 1);
+        return res;
+    }
+
+    private int rr(int val) {
+        int res = (val >> 1) | ((registers.flagC >> 1) & 0x80);
+        setRotateFlags(res, val << 8);
+        return res;
+    }
+
+    private int sla(int val) {
+        int res = (val << 1) & 0xFF;
+        setRotateFlags(res, val << 1);
+        return res;
+    }
+
+    private int sra(int val) {
+        int res = (val >> 1) | (val & 0x80);
+        setRotateFlags(res, val << 8);
+        return res;
+    }
+
+    private int swap(int val) {
+        int res = ((val & 0xF) << 4) | ((val & 0xF0) >> 4);
+        setRotateFlags(res, 0);
+        return res;
+    }
+
+    private int srl(int val) {
+        int res = val >> 1;
+        setRotateFlags(res, val << 8);
+        return res;
+    }
+
+    private void bit(int bit, int val) { // Z = !bit, N=0, H=1, C preserved
+        registers.flagZ = val & (1 << bit);
+        registers.flagN = 0;
+        registers.flagH = 0x10;
+    }
+
+    // --- FLAGS ---
+    // Nothing is packed into F here: see Registers.getF() for how each flag is rebuilt.
+
+    // ADD/ADC/SUB/SBC/CP: res is the unmasked result, so bit 8 is the carry (or borrow)
+    private void setArithmeticFlags(int a, int val, int res, int n) {
+        registers.flagZ = res;
+        registers.flagN = n;
+        registers.flagH = a ^ val ^ res;
+        registers.flagC = res;
+    }
+
+    // AND/XOR/OR: C=0, H=1 for AND only
+    private void setLogicFlags(int res, int h) {
+        registers.flagZ = res;
+        registers.flagN = 0;
+        registers.flagH = h;
+        registers.flagC = 0;
+    }
+
+    // Rotates and shifts: carry is the bit shifted out, already moved to bit 8
+    private void setRotateFlags(int res, int carry) {
+        registers.flagZ = res;
+        registers.flagN = 0;
+        registers.flagH = 0;
+        registers.flagC = carry;
+    }
+
+    private boolean getZ() { return (registers.flagZ & 0xFF) == 0; }
+    private boolean getC() { return (registers.flagC & 0x100) != 0; }
+
+    private boolean handleInterrupts() {
+        if (!registers.isIme() && !halted) return false;
+        int ifReg = interrupts.getInterruptFlag();
+        int fired = interrupts.getInterruptEnable() & ifReg & 0x1F;
+        if (fired != 0) {
+            halted = false; // Wakes up even with IME off, it just doesn't jump to the handler
+            if (!registers.isIme()) return false;
+
+            registers.setIme(false);
+            push(registers.pc);
+            int vector = 0;
+            if ((fired & 0x01) != 0) { vector = 0x40; interrupts.setInterruptFlag(ifReg & ~0x01); }
+            else if ((fired & 0x02) != 0) { vector = 0x48; interrupts.setInterruptFlag(ifReg & ~0x02); }
+            else if ((fired & 0x04) != 0) { vector = 0x50; interrupts.setInterruptFlag(ifReg & ~0x04); }
+            else if ((fired & 0x08) != 0) { vector = 0x58; interrupts.setInterruptFlag(ifReg & ~0x08); }
+            else if ((fired & 0x10) != 0) { vector = 0x60; interrupts.setInterruptFlag(ifReg & ~0x10); }
+            registers.pc = vector;
+            cycles += 20;
+            if (HotspotSampler.ENABLED) sampler.enter(vector, registers.sp);
+            return true;
+        }
+        return false;
+    }
+}
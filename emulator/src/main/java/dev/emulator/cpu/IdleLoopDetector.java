@@ -0,0 +1,125 @@
+package dev.emulator.cpu;
+
+import dev.emulator.memory.MemoryBus;
+
+/**
+ * Recognises idle loops: short backward-branching loops in ROM that only poll LY, STAT, IF or a
+ * RAM flag set by an interrupt handler, e.g. {@code LDH A,(44); CP 90; JR NZ,-6}. The registers
+ * only change at scheduler events, RAM only when the CPU writes it (and interrupts are only raised
+ * at events too), and nothing else in the loop has side effects. So every pass is identical until
+ * the next event and the CPU can skip whole passes at once.
+ *
+ * Each loop start is analysed once and the result cached (ROM code never changes), per ROM bank
+ * like the block cache, in tables shared with the detectors of the machine's forks.
+ */
+final class IdleLoopDetector {
+    // Longest loop body worth looking at, in bytes
+    private static final int MAX_LOOP_BYTES = 16;
+
+    private static final int UNKNOWN = 0;
+    private static final int NOT_IDLE = -1;
+
+    private final MemoryBus bus;
+
+    // Per ROM bank key (see MemoryBus.romBankKey), then per loop start address in the bank:
+    // UNKNOWN, NOT_IDLE, or the cycles one pass takes. Forks on other threads may race on a
+    // table or an entry; the loser only analyses the loop again, to the same result
+    private final int[][] loopCycles;
+
+    IdleLoopDetector(MemoryBus bus) {
+        this.bus = bus;
+        this.loopCycles = new int[MemoryBus.ROM_BANK_KEYS][];
+    }
+
+    // A detector for a fork running on bus, sharing what source has learnt
+    IdleLoopDetector(MemoryBus bus, IdleLoopDetector source) {
+        this.bus = bus;
+        this.loopCycles = source.loopCycles;
+    }
+
+    // Cycles per pass of the loop from start up to its closing branch (which ends at end),
+    // or 0 if it is not an idle loop
+    int cyclesPerPass(int start, int end) {
+        // Loops straddling the two halves of the ROM area would depend on two banks
+        if (end > 0x8000 || end - start > MAX_LOOP_BYTES || (start >> 14) != ((end - 1) >> 14)) return 0;
+
+        int bank = bus.romBankKey(start);
+        int[] table = loopCycles[bank];
+        if (table == null) table = loopCycles[bank] = new int[0x4000];
+
+        int cycles = table[start & 0x3FFF];
+        if (cycles == UNKNOWN) {
+            cycles = analyse(start, end);
+            table[start & 0x3FFF] = cycles;
+        }
+        return Math.max(cycles, 0);
+    }
+
+    private int analyse(int start, int end) {
+        int pc = start;
+        int cycles = 0;
+        boolean aLoaded = false; // A may only be modified after it was reloaded in this pass
+
+        while (pc < end) {
+            int op = bus.readCode(pc);
+            int length;
+            switch (op) {
+                case 0x00: // NOP
+                case 0xA7: // AND A (A unchanged)
+                case 0xB7: // OR A (A unchanged)
+                    length = 1;
+                    break;
+                case 0xF0: // LDH A, (a8)
+                    if (!isStableUntilEvent(0xFF00 | bus.readCode(pc + 1))) return NOT_IDLE;
+                    aLoaded = true;
+                    length = 2;
+                    break;
+                case 0xFA: // LD A, (a16)
+                    if (!isStableUntilEvent(bus.readCode(pc + 1) | (bus.readCode(pc + 2) << 8))) return NOT_IDLE;
+                    aLoaded = true;
+                    length = 3;
+                    break;
+                case 0xFE: // CP d8
+                    length = 2;
+                    break;
+                case 0xE6: // AND d8
+                case 0xEE: // XOR d8
+                case 0xF6: // OR d8
+                    if (!aLoaded) return NOT_IDLE;
+                    length = 2;
+                    break;
+                case 0xCB: { // Only BIT b, A
+                    int cb = bus.readCode(pc + 1);
+                    if ((cb & 0xC7) != 0x47) return NOT_IDLE;
+                    cycles += Cpu.CB_CYCLES[cb];
+                    length = 2;
+                    break;
+                }
+                case 0x18: case 0x20: case 0x28: case 0x30: case 0x38: // JR (cc), e8
+                    if (pc + 2 != end || ((pc + 2 + (byte) bus.readCode(pc + 1)) & 0xFFFF) != start) return NOT_IDLE;
+                    cycles += Cpu.CYCLES_TAKEN[op] - Cpu.CYCLES[op];
+                    length = 2;
+                    break;
+                case 0xC3: case 0xC2: case 0xCA: case 0xD2: case 0xDA: // JP (cc), a16
+                    if (pc + 3 != end || (bus.readCode(pc + 1) | (bus.readCode(pc + 2) << 8)) != start) return NOT_IDLE;
+                    cycles += Cpu.CYCLES_TAKEN[op] - Cpu.CYCLES[op];
+                    length = 3;
+                    break;
+                default:
+                    return NOT_IDLE;
+            }
+            cycles += Cpu.CYCLES[op];
+            pc += length;
+        }
+        return pc == end ? cycles : NOT_IDLE;
+    }
+
+    // Addresses whose value cannot change before the next scheduler event while the loop runs
+    private static boolean isStableUntilEvent(int address) {
+        return address == 0xFF44     // LY
+                || address == 0xFF41 // STAT
+                || address == 0xFF0F // IF
+                || (address >= 0xC000 && address <= 0xDFFF)  // WRAM
+                || (address >= 0xFF80 && address <= 0xFFFE); // HRAM
+    }
+}
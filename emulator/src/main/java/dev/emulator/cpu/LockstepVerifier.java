@@ -0,0 +1,101 @@
+package dev.emulator.cpu;
+
+import dev.emulator.cartridge.Cartridge;
+import dev.emulator.display.NullFrameSink;
+import dev.emulator.memory.MemoryBus;
+
+import java.io.IOException;
+
+/**
+ * Runs the table-driven {@link Cpu} and the original {@link ReferenceCpu} side by side,
+ * each on its own headless machine, and stops at the first instruction where they disagree.
+ * Registers and cycle counts are compared after every step (an instruction or a pre-decoded
+ * block, after which the reference is run up to the same cycle), and all of 0x8000-0xFFFF
+ * once per frame and at the end.
+ */
+public final class LockstepVerifier {
+    private static final long CYCLES_PER_FRAME = 70224;
+
+    private LockstepVerifier() {
+    }
+
+    // Returns true if both interpreters agreed for the whole run
+    public static boolean run(String romPath, long cycleLimit, boolean jit) throws IOException {
+        MemoryBus busUnderTest = new MemoryBus(new NullFrameSink());
+        busUnderTest.insertCartridge(Cartridge.open(romPath));
+        Cpu cpu = new Cpu(busUnderTest);
+        cpu.setJitEnabled(jit);
+
+        MemoryBus referenceBus = new MemoryBus(new NullFrameSink());
+        referenceBus.insertCartridge(Cartridge.open(romPath));
+        ReferenceCpu reference = new ReferenceCpu(referenceBus);
+
+        long steps = 0;
+        long nextMemoryCheck = CYCLES_PER_FRAME;
+
+        while (cpu.cycles < cycleLimit) {
+            int pc = reference.getRegisters().pc;
+            int opcode = referenceBus.readByte(pc);
+
+            try {
+                cpu.step();
+                // Cpu fast-forwards through HALT and idle loops, the reference runs them out in full:
+                // let it catch up (it must land on exactly the same cycle and state)
+                do {
+                    reference.step();
+                } while (reference.cycles < cpu.cycles);
+            } catch (IllegalStateException e) {
+                System.out.printf("Lockstep check stopped after %d steps at PC 0x%04X: %s%n",
+                        steps, pc, e.getMessage());
+                return false;
+            }
+            steps++;
+
+            if (!sameRegisters(cpu, reference)) {
+                System.out.printf("Lockstep check FAILED after %d steps: opcode 0x%02X at PC 0x%04X%n",
+                        steps, opcode, pc);
+                System.out.println("  table-driven: " + describe(cpu.getRegisters(), cpu.cycles));
+                System.out.println("  reference:    " + describe(reference.getRegisters(), reference.cycles));
+                return false;
+            }
+
+            if (cpu.cycles >= nextMemoryCheck || cpu.cycles >= cycleLimit) {
+                nextMemoryCheck += CYCLES_PER_FRAME;
+                int address = firstMemoryDifference(busUnderTest, referenceBus);
+                if (address >= 0) {
+                    System.out.printf("Lockstep check FAILED after %d steps: memory differs at 0x%04X " +
+                                    "(table-driven 0x%02X, reference 0x%02X)%n",
+                            steps, address, busUnderTest.readByte(address), referenceBus.readByte(address));
+                    return false;
+                }
+            }
+        }
+
+        System.out.printf("Lockstep check passed: %d steps, %d cycles%n", steps, cpu.cycles);
+        return true;
+    }
+
+    private static boolean sameRegisters(Cpu cpu, ReferenceCpu reference) {
+        Registers a = cpu.getRegisters();
+        Registers b = reference.getRegisters();
+        return cpu.cycles == reference.cycles
+                && a.getAF() == b.getAF() && a.getBC() == b.getBC()
+                && a.getDE() == b.getDE() && a.getHL() == b.getHL()
+                && a.sp == b.sp && a.pc == b.pc
+                && a.isIme() == b.isIme()
+                && cpu.isHalted() == reference.isHalted();
+    }
+
+    // Everything above the cartridge ROM; reads on this bus have no side effects
+    private static int firstMemoryDifference(MemoryBus a, MemoryBus b) {
+        for (int address = 0x8000; address <= 0xFFFF; address++) {
+            if (a.readByte(address) != b.readByte(address)) return address;
+        }
+        return -1;
+    }
+
+    private static String describe(Registers r, long cycles) {
+        return String.format("AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X IME=%b cycles=%d",
+                r.getAF(), r.getBC(), r.getDE(), r.getHL(), r.sp, r.pc, r.isIme(), cycles);
+    }
+}
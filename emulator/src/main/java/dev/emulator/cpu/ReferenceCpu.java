@@ -1,43 +1,57 @@
 package dev.emulator.cpu;
 
+import dev.emulator.hardware.Scheduler;
 import dev.emulator.memory.MemoryBus;
 
-public class Cpu {
+/**
+ * The original switch-and-range-check interpreter, kept as the reference the
+ * table-driven {@link Cpu} is checked against by {@link LockstepVerifier}.
+ * Not used for normal runs. It packs F eagerly on every flag update, so it also checks the
+ * lazy flags of {@link Cpu}. Changes from the original: LD A, (HL) now reads memory, and
+ * HALT really halts (idling 4 cycles per step where Cpu fast-forwards).
+ */
+class ReferenceCpu {
     private Registers registers;
     private MemoryBus bus;
+    private Scheduler scheduler;
     public long cycles;
+    private boolean halted;
 
-    public Cpu(MemoryBus bus) {
+    ReferenceCpu(MemoryBus bus) {
         this.bus = bus;
+        this.scheduler = bus.getScheduler();
         this.registers = new Registers();
         this.cycles = 0;
+
+        // The CPU owns the master clock the hardware catches up to
+        scheduler.setClock(() -> cycles);
     }
 
     public Registers getRegisters() { return registers; }
+    public boolean isHalted() { return halted; }
 
     public void step() {
-        long startCycles = this.cycles;
-
         // 1. Handle Interrupts
-        if (handleInterrupts()) {
-            bus.tick((int) (this.cycles - startCycles));
-            return;
-        }
-
-        // 2. Fetch
-        int pc = registers.pc;
-        int opcode = bus.readByte(pc);
-        registers.incrementPC();
+        if (!handleInterrupts()) {
+            if (halted) {
+                cycles += 4; // Idle one machine cycle at a time
+            } else {
+                // 2. Fetch
+                int opcode = bus.readByte(registers.pc);
+                registers.incrementPC();
 
-        // 3. Decode & Execute
-        executeOpcode(opcode);
+                // 3. Decode & Execute
+                executeOpcode(opcode);
+            }
+        }
 
-        // 4. Sync Hardware
-        long delta = this.cycles - startCycles;
-        bus.tick((int) delta);
+        // 4. Sync Hardware (same event-driven sync as Cpu, so both machines see the same hardware)
+        if (cycles >= scheduler.nextDeadline()) {
+            scheduler.runUntil(cycles);
+        }
     }
 
-    private void executeOpcode(int opcode) {
+    void executeOpcode(int opcode) {
         // --- BLOCK 1: 8-BIT LOADS (0x40 - 0x7F) ---
         // LD x, y (Load register y into register x)
         if (opcode >= 0x40 && opcode < 0x76) {
@@ -58,6 +72,12 @@ public class Cpu {
 
         // HALT (0x76)
         if (opcode == 0x76) {
+            int pending = bus.readByte(0xFFFF) & bus.readByte(0xFF0F) & 0x1F;
+            if (pending == 0) {
+                halted = true;
+            } else if (!registers.isIme()) {
+                executeOpcode(bus.readByte(registers.pc)); // HALT bug: next byte runs twice
+            }
             cycles += 4;
             return;
         }
@@ -69,6 +89,9 @@ public class Cpu {
             if (destIndex == 6) {
                 bus.writeByte(registers.getHL(), getReg(srcIndex));
                 cycles += 8;
+            } else if (srcIndex == 6) { // LD A, (HL) (0x7E)
+                setReg(destIndex, bus.readByte(registers.getHL()));
+                cycles += 8;
             } else {
                 setReg(destIndex, getReg(srcIndex));
                 cycles += 4;
@@ -310,15 +333,15 @@ public class Cpu {
             // --- CARRY / BCD / CPL ---
             case 0x2F: // CPL (Complement A)
                 registers.a = (~registers.a) & 0xFF;
-                setFlags((registers.f & 0x80) != 0, true, true, getC()); // N=1, H=1
+                setFlags((registers.getF() & 0x80) != 0, true, true, getC()); // N=1, H=1
                 cycles += 4;
                 break;
             case 0x3F: // CCF (Complement Carry Flag)
-                setFlags((registers.f & 0x80) != 0, false, false, !getC()); // N=0, H=0, C=!C
+                setFlags((registers.getF() & 0x80) != 0, false, false, !getC()); // N=0, H=0, C=!C
                 cycles += 4;
                 break;
             case 0x37: // SCF (Set Carry Flag)
-                setFlags((registers.f & 0x80) != 0, false, false, true); // N=0, H=0, C=1
+                setFlags((registers.getF() & 0x80) != 0, false, false, true); // N=0, H=0, C=1
                 cycles += 4;
                 break;
             case 0x27: // DAA (Decimal Adjust Accumulator)
@@ -348,9 +371,9 @@ public class Cpu {
 
     private void handleDAA() {
         int a = registers.a;
-        boolean n = (registers.f & 0x40) != 0;
-        boolean h = (registers.f & 0x20) != 0;
-        boolean c = (registers.f & 0x10) != 0;
+        boolean n = (registers.getF() & 0x40) != 0;
+        boolean h = (registers.getF() & 0x20) != 0;
+        boolean c = (registers.getF() & 0x10) != 0;
 
         if (!n) { // Addition
             if (c || a > 0x99) { a += 0x60; c = true; }
@@ -440,7 +463,7 @@ public class Cpu {
         return res;
     }
 
-    private void alu(int type, int val) {
+    void alu(int type, int val) {
         int a = registers.a;
         int res = 0;
         boolean z = false, n = false, h = false, c = false;
@@ -551,18 +574,21 @@ public class Cpu {
         if (n) flags |= 0x40;
         if (h) flags |= 0x20;
         if (c) flags |= 0x10;
-        registers.f = flags;
+        registers.setF(flags);
     }
 
-    private boolean getZ() { return (registers.f & 0x80) != 0; }
-    private boolean getC() { return (registers.f & 0x10) != 0; }
+    private boolean getZ() { return (registers.getF() & 0x80) != 0; }
+    private boolean getC() { return (registers.getF() & 0x10) != 0; }
 
     private boolean handleInterrupts() {
-        if (!registers.isIme()) return false;
+        if (!registers.isIme() && !halted) return false;
         int ie = bus.readByte(0xFFFF);
         int ifReg = bus.readByte(0xFF0F);
         int fired = ie & ifReg & 0x1F;
         if (fired != 0) {
+            halted = false;
+            if (!registers.isIme()) return false;
+
             registers.setIme(false);
             push(registers.pc);
             int vector = 0;
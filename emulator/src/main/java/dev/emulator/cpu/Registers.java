@@ -0,0 +1,142 @@
+package dev.emulator.cpu;
+
+import java.nio.ByteBuffer;
+
+public class Registers {
+    // 8-bit Registers (Public for direct access by CPU)
+    public int a, b, c, d, e, h, l;
+
+    // Flags (F) are evaluated lazily: each op stores the cheapest value the flag can be
+    // rebuilt from, and F is only packed when something reads it (PUSH AF, save states...)
+    int flagZ; // Z = (flagZ & 0xFF) == 0, usually the raw result
+    int flagN; // N = flagN != 0
+    int flagH; // H = bit 4 of flagH, usually operand ^ operand ^ result
+    int flagC; // C = bit 8 of flagC, usually the raw 9-bit result
+
+    // 16-bit Registers
+    public int pc;
+    public int sp;
+
+    // Interrupt Master Enable
+    private boolean ime;
+
+    public Registers() {
+        // Standard Game Boy Power-on values
+        this.pc = 0x0100; // Start at entry point (after bootrom)
+        this.sp = 0xFFFE;
+        this.a = 0x01;
+        setF(0xB0);
+        this.b = 0x00;
+        this.c = 0x13;
+        this.d = 0x00;
+        this.e = 0xD8;
+        this.h = 0x01;
+        this.l = 0x4D;
+        this.ime = false;
+    }
+
+    public Registers(Registers source) {
+        this.a = source.a;
+        this.b = source.b;
+        this.c = source.c;
+        this.d = source.d;
+        this.e = source.e;
+        this.h = source.h;
+        this.l = source.l;
+        this.flagZ = source.flagZ;
+        this.flagN = source.flagN;
+        this.flagH = source.flagH;
+        this.flagC = source.flagC;
+        this.pc = source.pc;
+        this.sp = source.sp;
+        this.ime = source.ime;
+    }
+
+    // --- 16-Bit Virtual Registers (Combine 8-bit ones) ---
+
+    public int getAF() {
+        return (a << 8) | getF();
+    }
+
+    public void setAF(int val) {
+        a = (val >> 8) & 0xFF;
+        setF(val);
+    }
+
+    // --- Flag Register (packed on demand) ---
+
+    public int getF() {
+        return ((flagZ & 0xFF) == 0 ? 0x80 : 0)
+                | (flagN != 0 ? 0x40 : 0)
+                | ((flagH & 0x10) << 1)
+                | ((flagC & 0x100) >> 4);
+    }
+
+    public void setF(int val) {
+        // Lower 4 bits of F are always 0
+        flagZ = (val & 0x80) != 0 ? 0 : 1;
+        flagN = val & 0x40;
+        flagH = (val & 0x20) >> 1;
+        flagC = (val & 0x10) << 4;
+    }
+
+    public int getBC() {
+        return (b << 8) | c;
+    }
+
+    public void setBC(int val) {
+        b = (val >> 8) & 0xFF;
+        c = val & 0xFF;
+    }
+
+    public int getDE() {
+        return (d << 8) | e;
+    }
+
+    public void setDE(int val) {
+        d = (val >> 8) & 0xFF;
+        e = val & 0xFF;
+    }
+
+    public int getHL() {
+        return (h << 8) | l;
+    }
+
+    public void setHL(int val) {
+        h = (val >> 8) & 0xFF;
+        l = val & 0xFF;
+    }
+
+    // --- PC / SP Helpers ---
+
+    public int getPC() { return pc; }
+    public void setPC(int val) { pc = val & 0xFFFF; }
+    public void incrementPC() { pc = (pc + 1) & 0xFFFF; }
+    public void addPC(int offset) { pc = (pc + offset) & 0xFFFF; }
+
+    public int getSP() { return sp; }
+    public void setSP(int val) { sp = val & 0xFFFF; }
+
+    // --- Interrupt Flag ---
+
+    public boolean isIme() { return ime; }
+    public void setIme(boolean ime) { this.ime = ime; }
+
+    // --- Save States: AF BC DE HL SP PC, then IME ---
+
+    void saveState(ByteBuffer out) {
+        out.putShort((short) getAF()).putShort((short) getBC()).putShort((short) getDE()).putShort((short) getHL());
+        out.putShort((short) sp).putShort((short) pc);
+        out.put((byte) (ime ? 1 : 0));
+    }
+
+    void loadState(ByteBuffer in) {
+        setAF(in.getShort() & 0xFFFF);
+        setBC(in.getShort() & 0xFFFF);
+        setDE(in.getShort() & 0xFFFF);
+        setHL(in.getShort() & 0xFFFF);
+        sp = in.getShort() & 0xFFFF;
+        pc = in.getShort() & 0xFFFF;
+        ime = in.get() != 0;
+    }
+}
@@ -9,19 +9,25 @@ import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 
-public class Display extends JPanel {
+public class Display extends JPanel implements FrameSink {
     public static final int WIDTH = 160;
     public static final int HEIGHT = 144;
 
-    private final BufferedImage image;
-    private final int[] pixels;
+    // Three frames handed from the emulator thread to the EDT (see TripleBuffer)
+    private final BufferedImage[] images = new BufferedImage[3];
+    private final int[][] pixels = new int[3][];
+    private final TripleBuffer buffers = new TripleBuffer();
     private final JFrame frame;
     private Joypad joypad;
+    private FramePacer pacer;
+    // Backspace held: the emulation thread steps back through the rewind history
+    private volatile boolean rewinding;
 
     public Display() {
-        this.image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-
-        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < 3; i++) {
+            images[i] = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            pixels[i] = ((DataBufferInt) images[i].getRaster().getDataBuffer()).getData();
+        }
 
         frame = new JFrame("JavaBoy");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -36,6 +42,18 @@ public class Display extends JPanel {
         frame.addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+                    rewinding = true;
+                    return;
+                }
+                if (pacer != null) {
+                    // Space held: fast-forward. -/=: speed down/up
+                    switch (e.getKeyCode()) {
+                        case KeyEvent.VK_SPACE:  pacer.setFastForward(true); return;
+                        case KeyEvent.VK_MINUS:  pacer.slower(); return;
+                        case KeyEvent.VK_EQUALS: pacer.faster(); return;
+                    }
+                }
                 if (joypad == null) return;
                 switch (e.getKeyCode()) {
                     case KeyEvent.VK_RIGHT: joypad.keyPressed(0); break;
@@ -50,6 +68,14 @@ public class Display extends JPanel {
             }
             @Override
             public void keyReleased(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+                    rewinding = false;
+                    return;
+                }
+                if (pacer != null && e.getKeyCode() == KeyEvent.VK_SPACE) {
+                    pacer.setFastForward(false);
+                    return;
+                }
                 if (joypad == null) return;
                 switch (e.getKeyCode()) {
                     case KeyEvent.VK_RIGHT: joypad.keyReleased(0); break;
@@ -71,14 +97,37 @@ public class Display extends JPanel {
         this.joypad = joypad;
     }
 
+    // Lets the speed keys reach the pacer
+    public void setPacer(FramePacer pacer) {
+        this.pacer = pacer;
+    }
+
+    public boolean isRewinding() {
+        return rewinding;
+    }
+
+    // Shown after the name in the window title; callable from any thread
+    public void showStatus(String status) {
+        SwingUtilities.invokeLater(() -> frame.setTitle("JavaBoy - " + status));
+    }
+
+    // Frames replaced by a newer one before they were painted
+    public long getDroppedFrames() { return buffers.getDroppedFrames(); }
+    // Paints that found no new frame and showed the previous one again
+    public long getRepeatedFrames() { return buffers.getRepeatedFrames(); }
+
+    // Emulation thread: never blocks and never touches the image being painted
+    @Override
     public void refreshFrame(int[] newPixels) {
-        System.arraycopy(newPixels, 0, this.pixels, 0, newPixels.length);
+        System.arraycopy(newPixels, 0, pixels[buffers.backIndex()], 0, newPixels.length);
+        buffers.publish();
         this.repaint();
     }
 
+    // EDT: always paints the newest complete frame
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        g.drawImage(image, 0, 0, WIDTH * 3, HEIGHT * 3, null);
+        g.drawImage(images[buffers.acquire()], 0, 0, WIDTH * 3, HEIGHT * 3, null);
     }
 }
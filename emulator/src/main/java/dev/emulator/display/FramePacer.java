@@ -0,0 +1,133 @@
+package dev.emulator.display;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds the emulation thread back to real Game Boy speed (59.73 FPS) times a speed multiplier.
+ * Frame deadlines are absolute, so oversleeping one frame shortens the next wait instead of
+ * accumulating drift. Most of each wait is parked and only the last millisecond is
+ * spun, which keeps the host core mostly idle. Every 60 frames it measures how much CPU time
+ * the emulation thread used.
+ */
+public final class FramePacer {
+    public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+    // Steps of slower()/faster()
+    private static final double[] SPEEDS = { 0.25, 0.5, 1, 2, 4, UNLIMITED };
+
+    // Waits shorter than this are spun: parkNanos can wake up late
+    private static final long SPIN_NANOS = 1_000_000;
+    // Further behind than this (a stall, or a host too slow for the speed) the lost time is written off
+    private static final long MAX_LAG_NANOS = 4 * FrameSkipPolicy.FRAME_NANOS;
+    // ~1 emulated second
+    private static final int REPORT_FRAMES = 60;
+
+    // Set from the UI thread, read by the emulation thread
+    private volatile double speed = 1;
+    private volatile boolean fastForward;
+    // At 1x the audio line sets the pace instead: the emulation thread waits for room for its
+    // samples (see LineOut.setBlocking), so frames are not waited for here
+    private volatile boolean audioClock;
+
+    private long deadline;
+    private boolean started;
+
+    // CPU usage, measured over the last REPORT_FRAMES frames
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private boolean measuring;
+    private int reportFrames;
+    private long reportWall;
+    private long reportCpu;
+    private volatile double cpuLoad = -1;
+    private volatile double cpuMillisPerSecond = -1;
+
+    public double getSpeed() { return speed; }
+
+    // 0.25 and up, or UNLIMITED
+    public void setSpeed(double speed) {
+        if (!(speed >= 0.25)) throw new IllegalArgumentException("Speed must be at least 0.25: " + speed);
+        this.speed = speed;
+    }
+
+    // Next step down (0.25x is the slowest)
+    public void slower() {
+        for (int i = SPEEDS.length - 1; i >= 0; i--) {
+            if (SPEEDS[i] < speed) { speed = SPEEDS[i]; return; }
+        }
+    }
+
+    // Next step up (UNLIMITED is the fastest)
+    public void faster() {
+        for (double step : SPEEDS) {
+            if (step > speed) { speed = step; return; }
+        }
+    }
+
+    public boolean isFastForward() { return fastForward; }
+    // While on, frames run as fast as the host allows, whatever the speed
+    public void setFastForward(boolean fastForward) { this.fastForward = fastForward; }
+
+    public void setAudioClock(boolean audioClock) { this.audioClock = audioClock; }
+    // Whether the audio line holds the emulator back right now (audio clock on, running at 1x)
+    public boolean isAudioPaced() { return audioClock && !fastForward && speed == 1; }
+
+    // Fraction of one host core the emulation thread used, or -1 before the first measurement
+    public double getCpuLoad() { return cpuLoad; }
+    // Host CPU time spent per emulated second, or -1 before the first measurement
+    public double getCpuMillisPerSecond() { return cpuMillisPerSecond; }
+
+    /**
+     * Called by the emulation thread at the end of every frame; returns once the next one is due.
+     * Returns true when a new CPU usage measurement is available.
+     */
+    public boolean frameDone() {
+        long now = System.nanoTime();
+        double current = fastForward ? UNLIMITED : speed;
+
+        if (!started || current == UNLIMITED || (audioClock && current == 1)) {
+            started = true;
+            deadline = now;
+        } else {
+            deadline += (long) (FrameSkipPolicy.FRAME_NANOS / current);
+            long wait = deadline - now;
+            if (wait < -MAX_LAG_NANOS) {
+                deadline = now;
+            } else if (wait > 0) {
+                waitUntil(deadline);
+            }
+        }
+        return measure();
+    }
+
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (System.nanoTime() - deadline < 0) {
+            Thread.yield();
+        }
+    }
+
+    private boolean measure() {
+        if (measuring && ++reportFrames < REPORT_FRAMES) return false;
+
+        long wall = System.nanoTime();
+        long cpu = threadCpuTime();
+        boolean report = measuring && cpu >= 0; // -1: thread CPU time not supported
+        if (report) {
+            cpuLoad = (double) (cpu - reportCpu) / (wall - reportWall);
+            cpuMillisPerSecond = (cpu - reportCpu) / 1e6 / (REPORT_FRAMES * FrameSkipPolicy.FRAME_NANOS / 1e9);
+        }
+        measuring = true;
+        reportFrames = 0;
+        reportWall = wall;
+        reportCpu = cpu;
+        return report;
+    }
+
+    private long threadCpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+}
@@ -0,0 +1,10 @@
+package dev.emulator.display;
+
+/**
+ * Anything the PPU can hand a finished frame to.
+ * The Swing {@link Display} is one, {@link NullFrameSink} is the headless one.
+ */
+public interface FrameSink {
+    // Called once per frame (at the start of V-Blank) with 160 * 144 ARGB pixels
+    void refreshFrame(int[] pixels);
+}
@@ -0,0 +1,64 @@
+package dev.emulator.display;
+
+/**
+ * Decides, at the start of every frame, whether the PPU draws it. A skipped frame still runs its
+ * full timing (LY, STAT modes, V-Blank and STAT interrupts, register writes); only the
+ * rasterization and the hand-off to the {@link FrameSink} are left out.
+ */
+public interface FrameSkipPolicy {
+    // Real duration of one frame: 70224 cycles at 4,194,304 Hz (~59.73 FPS)
+    long FRAME_NANOS = 70224L * 1_000_000_000L / 4_194_304L;
+
+    // Draws every frame
+    FrameSkipPolicy NONE = () -> true;
+
+    // Draws nothing: timing only, e.g. for forks explored by a search that never looks at the screen
+    FrameSkipPolicy NEVER = () -> false;
+
+    // Called once per frame, as LY goes back to 0
+    boolean renderFrame();
+
+    // Draws one frame out of every n (n = 1 draws them all)
+    static FrameSkipPolicy fixed(int n) {
+        if (n < 1) throw new IllegalArgumentException("Frame skip interval must be at least 1: " + n);
+        return new FrameSkipPolicy() {
+            private int count;
+
+            @Override
+            public boolean renderFrame() {
+                boolean render = count == 0;
+                count = (count + 1) % n;
+                return render;
+            }
+        };
+    }
+
+    // Skips frames while the emulation is running behind wall-clock time, up to maxSkip in a row
+    static FrameSkipPolicy adaptive(int maxSkip) {
+        return new FrameSkipPolicy() {
+            private long start = -1;
+            private long frames;
+            private int skippedInRow;
+
+            @Override
+            public boolean renderFrame() {
+                long now = System.nanoTime();
+                if (start < 0) start = now;
+                long behind = now - (start + frames++ * FRAME_NANOS);
+
+                if (behind > FRAME_NANOS && skippedInRow < maxSkip) {
+                    skippedInRow++;
+                    return false;
+                }
+                skippedInRow = 0;
+                // Too far behind to ever catch up (a stall, or a host that is just too slow):
+                // start counting from here rather than skipping forever
+                if (behind > (maxSkip + 1) * FRAME_NANOS) {
+                    start = now;
+                    frames = 1;
+                }
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package dev.emulator.display;
+
+/**
+ * Frame sink for headless runs: throws every frame away.
+ * Lets the emulator run on machines with no display (and no Swing).
+ */
+public class NullFrameSink implements FrameSink {
+
+    @Override
+    public void refreshFrame(int[] pixels) {
+        // Nothing to draw to
+    }
+}
@@ -0,0 +1,53 @@
+package dev.emulator.display;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of frames from one producer thread to one consumer thread through three
+ * buffers: the producer owns one to draw into, the consumer owns one to show, and the third holds
+ * the newest finished frame. Both sides swap with a single atomic exchange, so neither ever waits.
+ * This class only tracks which of the three indices belongs to whom; the buffers are the caller's.
+ */
+public final class TripleBuffer {
+    // Set in the shared slot when it holds a frame the consumer has not taken yet
+    private static final int FRESH = 0x4;
+
+    // Index of the middle buffer, plus FRESH
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int back = 0;  // Producer's
+    private int front = 2; // Consumer's
+
+    // Each one written by a single thread
+    private volatile long published;
+    private volatile long dropped;
+    private volatile long repeated;
+
+    // Producer: the buffer to draw the next frame into
+    public int backIndex() {
+        return back;
+    }
+
+    // Producer: the back buffer holds a finished frame. If the previous one was never taken it is dropped.
+    public void publish() {
+        int previous = shared.getAndSet(back | FRESH);
+        back = previous & 0x3;
+        published++;
+        if ((previous & FRESH) != 0) dropped++;
+    }
+
+    // Consumer: the buffer holding the newest finished frame (the one it had already, if none is new)
+    public int acquire() {
+        if ((shared.get() & FRESH) != 0) {
+            front = shared.getAndSet(front) & 0x3;
+        } else {
+            repeated++;
+        }
+        return front;
+    }
+
+    public long getPublishedFrames() { return published; }
+    // Frames replaced by a newer one before the consumer got to them
+    public long getDroppedFrames() { return dropped; }
+    // Times the consumer asked and there was no new frame, so it showed the last one again
+    public long getRepeatedFrames() { return repeated; }
+}
@@ -0,0 +1,297 @@
+package dev.emulator.hardware;
+
+import dev.emulator.audio.AudioSink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The audio processing unit: two square channels (the first with a frequency sweep), the wave
+ * channel and the noise channel, mixed to stereo by NR50/NR51. Registers are 0xFF10-0xFF26,
+ * wave RAM 0xFF30-0xFF3F.
+ *
+ * Like the timer it is not ticked: it is caught up to the CPU clock when a register is
+ * accessed, and once per video frame's worth of cycles by a scheduler event. Catching up runs
+ * the frame sequencer (length counters at 256 Hz, sweep at 128 Hz, envelopes at 64 Hz) and, when
+ * there is a sink to hear it, makes the samples for that span in one loop, moving each channel
+ * along its waveform by the cycles between two samples. The batch is handed to the sink by the
+ * scheduler event. With no sink no samples are made at all, so a headless run pays only for the
+ * register accesses.
+ *
+ * The frame sequencer is stepped every 8192 cycles of the CPU clock. On hardware it follows bit
+ * 12 of the divider, so a write to DIV shifts it; that is not modelled.
+ */
+public class Apu {
+    private static final int CYCLES_PER_SECOND = 4194304;
+    // Frame sequencer: 512 Hz
+    private static final int SEQUENCER_CYCLES = 8192;
+    // Samples go to the sink once per video frame's worth of cycles (~738 of them)
+    private static final int BATCH_CYCLES = 70224;
+    private static final int BATCH_FRAMES = (int) ((long) BATCH_CYCLES * AudioSink.SAMPLE_RATE / CYCLES_PER_SECOND) + 2;
+
+    // High-pass filter standing in for the output capacitor: how much charge it keeps per sample
+    private static final float CHARGE = (float) Math.pow(0.999958, (double) CYCLES_PER_SECOND / AudioSink.SAMPLE_RATE);
+    // A channel at full volume on a side at full volume: 15 * 8 * 48 (four of them can clip)
+    private static final int SCALE = 48;
+
+    // NR10-NR52 (0xFF10-0xFF26): bits that always read as 1 (write-only and unused bits)
+    private static final int[] READ_MASKS = {
+        0x80, 0x3F, 0x00, 0xFF, 0xBF,   // NR10-NR14
+        0xFF, 0x3F, 0x00, 0xFF, 0xBF,   // (unused), NR21-NR24
+        0x7F, 0xFF, 0x9F, 0xFF, 0xBF,   // NR30-NR34
+        0xFF, 0xFF, 0x00, 0x00, 0xBF,   // (unused), NR41-NR44
+        0x00, 0x00, 0x70,               // NR50-NR52
+    };
+    private static final int NR50 = 0x14;
+    private static final int NR51 = 0x15;
+
+    private final Scheduler scheduler;
+    private final SquareChannel channel1 = new SquareChannel(true);
+    private final SquareChannel channel2 = new SquareChannel(false);
+    private final WaveChannel channel3 = new WaveChannel();
+    private final NoiseChannel channel4 = new NoiseChannel();
+
+    // NR10-NR51 as last written (NR52 is built on read)
+    private final int[] registers = new int[0x16];
+    private boolean powered = true;
+
+    // Caught up to this cycle; the frame sequencer takes its next step at nextStep
+    private long time;
+    private long nextStep = SEQUENCER_CYCLES;
+    private int step;
+
+    // --- Synthesis (only with a sink) ---
+    private AudioSink sink;
+    // Sample n falls on cycle sampleEpoch + n * CYCLES_PER_SECOND / SAMPLE_RATE
+    private long sampleEpoch;
+    private long sampleCount;
+    // Cycle the channels' waveforms have been moved along to
+    private long waveTime;
+    private final short[] batch = new short[2 * BATCH_FRAMES];
+    private int batchFrames;
+    private float leftCharge;
+    private float rightCharge;
+
+    public Apu(Scheduler scheduler) {
+        this.scheduler = scheduler;
+        scheduler.setHandler(Scheduler.APU, this::onBatch);
+
+        // As the boot ROM leaves it: channel 1 still on from the start-up chime, now silent
+        int[] boot = { 0x80, 0xBF, 0xF3, 0xFF, 0xBF, 0x00, 0x3F, 0x00, 0xFF, 0xBF, 0x7F, 0xFF, 0x9F, 0xFF, 0xBF,
+                0x00, 0xFF, 0x00, 0x00, 0xBF, 0x77, 0xF3 };
+        for (int register = 0; register < boot.length; register++) {
+            if (register % 5 != 4) writeRegister(register, boot[register]);
+            registers[register] = boot[register];
+        }
+        channel1.enabled = true;
+    }
+
+    // Same state as source, with no sink, on a scheduler that already carries its next batch
+    public Apu(Apu source, Scheduler scheduler) {
+        this.scheduler = scheduler;
+        scheduler.setHandler(Scheduler.APU, this::onBatch);
+        ByteBuffer state = ByteBuffer.allocate(STATE_SIZE);
+        source.saveState(state);
+        state.flip();
+        loadState(state);
+    }
+
+    /**
+     * Where the samples go from now on, or null to make none. Samples start at the current
+     * cycle; anything in the batch so far is dropped.
+     */
+    public void setSink(AudioSink sink) {
+        long now = scheduler.now();
+        catchUp(now);
+        this.sink = sink;
+        restartSamples();
+        if (sink != null) {
+            scheduler.schedule(Scheduler.APU, now + BATCH_CYCLES);
+        } else {
+            scheduler.cancel(Scheduler.APU);
+        }
+    }
+
+    public AudioSink getSink() { return sink; }
+
+    private void restartSamples() {
+        sampleEpoch = time;
+        sampleCount = 0;
+        waveTime = time;
+        batchFrames = 0;
+    }
+
+    // Scheduler event: hand the batch to the sink, book the next one
+    private void onBatch(long time) {
+        if (sink == null) return;
+        catchUp(time);
+        sink.writeSamples(batch, batchFrames);
+        batchFrames = 0;
+        scheduler.schedule(Scheduler.APU, time + BATCH_CYCLES);
+    }
+
+    private void catchUp(long now) {
+        while (time < now) {
+            long end = Math.min(now, nextStep);
+            if (sink != null) synthesize(end);
+            time = end;
+            if (time == nextStep) {
+                stepSequencer();
+                nextStep += SEQUENCER_CYCLES;
+            }
+        }
+    }
+
+    private void stepSequencer() {
+        if (powered) {
+            if ((step & 1) == 0) {
+                channel1.clockLength();
+                channel2.clockLength();
+                channel3.clockLength();
+                channel4.clockLength();
+            }
+            if (step == 2 || step == 6) channel1.clockSweep();
+            if (step == 7) {
+                channel1.clockEnvelope();
+                channel2.clockEnvelope();
+                channel4.clockEnvelope();
+            }
+        }
+        step = (step + 1) & 7;
+    }
+
+    // Every sample that falls up to the cycle end, into the batch
+    private void synthesize(long end) {
+        int panning = registers[NR51];
+        int leftVolume = ((registers[NR50] >> 4) & 0x07) + 1;
+        int rightVolume = (registers[NR50] & 0x07) + 1;
+
+        while (true) {
+            long at = sampleEpoch + sampleCount * CYCLES_PER_SECOND / AudioSink.SAMPLE_RATE;
+            if (at > end) break;
+            int cycles = (int) (at - waveTime);
+            waveTime = at;
+            channel1.advance(cycles);
+            channel2.advance(cycles);
+            channel3.advance(cycles);
+            channel4.advance(cycles);
+
+            // Each DAC turns 0-15 into -15..15 (odd steps, so silence on an enabled DAC is -15)
+            int left = 0;
+            int right = 0;
+            int level;
+            if (channel1.dacEnabled) {
+                level = 2 * channel1.output() - 15;
+                if ((panning & 0x10) != 0) left += level;
+                if ((panning & 0x01) != 0) right += level;
+            }
+            if (channel2.dacEnabled) {
+                level = 2 * channel2.output() - 15;
+                if ((panning & 0x20) != 0) left += level;
+                if ((panning & 0x02) != 0) right += level;
+            }
+            if (channel3.dacEnabled) {
+                level = 2 * channel3.output() - 15;
+                if ((panning & 0x40) != 0) left += level;
+                if ((panning & 0x04) != 0) right += level;
+            }
+            if (channel4.dacEnabled) {
+                level = 2 * channel4.output() - 15;
+                if ((panning & 0x80) != 0) left += level;
+                if ((panning & 0x08) != 0) right += level;
+            }
+
+            float leftIn = left * leftVolume * SCALE;
+            float leftOut = leftIn - leftCharge;
+            leftCharge = leftIn - leftOut * CHARGE;
+            float rightIn = right * rightVolume * SCALE;
+            float rightOut = rightIn - rightCharge;
+            rightCharge = rightIn - rightOut * CHARGE;
+
+            if (batchFrames == BATCH_FRAMES) { // A batch event came late: hand over what there is
+                sink.writeSamples(batch, batchFrames);
+                batchFrames = 0;
+            }
+            batch[2 * batchFrames] = clip(leftOut);
+            batch[2 * batchFrames + 1] = clip(rightOut);
+            batchFrames++;
+            sampleCount++;
+        }
+    }
+
+    private static short clip(float sample) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, (int) sample));
+    }
+
+    public int readByte(int address) {
+        if (address >= 0xFF30) return channel3.waveRam[address - 0xFF30] & 0xFF;
+        if (address > 0xFF26) return 0xFF;
+        if (address < 0xFF26) return registers[address - 0xFF10] | READ_MASKS[address - 0xFF10];
+
+        catchUp(scheduler.now()); // NR52: which channels are still playing
+        return (powered ? 0x80 : 0) | 0x70 | (channel4.enabled ? 0x08 : 0) | (channel3.enabled ? 0x04 : 0)
+                | (channel2.enabled ? 0x02 : 0) | (channel1.enabled ? 0x01 : 0);
+    }
+
+    public void writeByte(int address, int value) {
+        catchUp(scheduler.now());
+        if (address >= 0xFF30) {
+            channel3.waveRam[address - 0xFF30] = (byte) value;
+        } else if (address == 0xFF26) {
+            setPower((value & 0x80) != 0);
+        } else if (address < 0xFF26 && powered) {
+            registers[address - 0xFF10] = value;
+            writeRegister(address - 0xFF10, value);
+        }
+    }
+
+    // NR10-NR44 go to their channel, five registers each; NR50 and NR51 are only read back
+    private void writeRegister(int register, int value) {
+        if (register < 5) channel1.write(register, value);
+        else if (register < 10) channel2.write(register - 5, value);
+        else if (register < 15) channel3.write(register - 10, value);
+        else if (register < 20) channel4.write(register - 15, value);
+    }
+
+    // Powering off clears every register and stops all channels; while off, writes are ignored
+    private void setPower(boolean on) {
+        if (powered && !on) {
+            for (int register = 0; register < registers.length; register++) {
+                registers[register] = 0;
+                writeRegister(register, 0);
+            }
+        } else if (!powered && on) {
+            step = 0;
+        }
+        powered = on;
+    }
+
+    // --- SAVE STATES ---
+    // Upper bound of what saveState() writes
+    static final int STATE_SIZE = 160;
+
+    // Times are absolute cycles, like the timer's. The batch in progress is not saved.
+    public void saveState(ByteBuffer out) {
+        for (int register : registers) out.put((byte) register);
+        out.put((byte) (powered ? 1 : 0)).putLong(time).putLong(nextStep).put((byte) step);
+        channel1.saveState(out);
+        channel2.saveState(out);
+        channel3.saveState(out);
+        channel4.saveState(out);
+    }
+
+    public void loadState(ByteBuffer in) {
+        for (int register = 0; register < registers.length; register++) registers[register] = in.get() & 0xFF;
+        powered = in.get() != 0;
+        time = in.getLong();
+        nextStep = in.getLong();
+        step = in.get() & 0x07;
+        channel1.loadState(in);
+        channel2.loadState(in);
+        channel3.loadState(in);
+        channel4.loadState(in);
+
+        // Samples go on from the loaded time (the scheduler just lost or gained the next batch)
+        restartSamples();
+        if (sink != null) scheduler.schedule(Scheduler.APU, time + BATCH_CYCLES);
+    }
+}
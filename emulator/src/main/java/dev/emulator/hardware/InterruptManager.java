@@ -1,5 +1,7 @@
 package dev.emulator.hardware;
 
+import java.nio.ByteBuffer;
+
 public class InterruptManager {
     // 0xFFFF: Interrupt Enable (IE) - Which interrupts does the game WANT?
     private int ie = 0;
@@ -13,6 +15,14 @@ public class InterruptManager {
     // Bit 3: Serial   (0x58)
     // Bit 4: Joypad   (0x60)
 
+    public InterruptManager() {
+    }
+
+    public InterruptManager(InterruptManager source) {
+        this.ie = source.ie;
+        this.ifReg = source.ifReg;
+    }
+
     public void requestInterrupt(int bit) {
         ifReg |= (1 << bit);
     }
@@ -32,4 +42,13 @@ public class InterruptManager {
     public void setInterruptFlag(int value) {
         this.ifReg = value;
     }
+
+    public void saveState(ByteBuffer out) {
+        out.put((byte) ie).put((byte) ifReg);
+    }
+
+    public void loadState(ByteBuffer in) {
+        ie = in.get() & 0xFF;
+        ifReg = in.get() & 0xFF;
+    }
 }
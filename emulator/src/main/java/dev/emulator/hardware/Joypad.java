@@ -1,5 +1,7 @@
 package dev.emulator.hardware;
 
+import java.nio.ByteBuffer;
+
 public class Joypad {
     private final InterruptManager interruptManager;
 
@@ -17,6 +19,14 @@ public class Joypad {
         this.interruptManager = interruptManager;
     }
 
+    // Same select bits and held buttons as source
+    public Joypad(Joypad source, InterruptManager interruptManager) {
+        this.interruptManager = interruptManager;
+        this.p1 = source.p1;
+        this.buttons = source.buttons;
+        this.directions = source.directions;
+    }
+
     // Called by the MemoryBus when the game reads 0xFF00
     public int readByte() {
         // Start with high nibble (which is read/write)
@@ -44,6 +54,15 @@ public class Joypad {
         p1 = (p1 & 0xCF) | (value & 0x30);
     }
 
+    // Only the P1 select bits: which buttons are held belongs to the host, not to the state
+    public void saveState(ByteBuffer out) {
+        out.put((byte) p1);
+    }
+
+    public void loadState(ByteBuffer in) {
+        p1 = in.get() & 0xFF;
+    }
+
     // --- INTERFACE FOR KEYBOARD (Called by Display) ---
 
     // Bit 0: Right / A
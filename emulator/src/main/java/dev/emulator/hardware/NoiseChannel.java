@@ -0,0 +1,98 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Channel 4: noise from a 15-bit linear feedback shift register (7 bits in short mode, which
+ * sounds more like a tone), with a volume envelope.
+ */
+final class NoiseChannel extends SoundChannel {
+    private final Envelope envelope = new Envelope();
+    // NR43: the register is clocked every divisor << shift cycles (shift 14 and 15: never)
+    private int shift;
+    private boolean shortMode;
+    private int divisorCode;
+    private int timer;
+    private int lfsr = 0x7FFF;
+
+    NoiseChannel() {
+        super(64);
+    }
+
+    @Override
+    void write(int register, int value) {
+        switch (register) {
+            case 1:
+                loadLength(value & 0x3F);
+                break;
+            case 2:
+                setDacEnabled(envelope.write(value));
+                break;
+            case 3:
+                shift = value >> 4;
+                shortMode = (value & 0x08) != 0;
+                divisorCode = value & 0x07;
+                break;
+            case 4:
+                writeControl(value);
+                break;
+        }
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        lfsr = 0x7FFF;
+        envelope.trigger();
+    }
+
+    // Divisors 8, 16, 32, 48 ... 112
+    private int period() {
+        return (divisorCode == 0 ? 8 : divisorCode * 16) << shift;
+    }
+
+    void clockEnvelope() {
+        envelope.clock();
+    }
+
+    @Override
+    void advance(int cycles) {
+        timer -= cycles;
+        if (timer > 0) return;
+        int period = period();
+        do {
+            timer += period;
+            if (shift < 14) {
+                int feedback = (lfsr ^ (lfsr >> 1)) & 1;
+                lfsr = (lfsr >> 1) | (feedback << 14);
+                if (shortMode) lfsr = (lfsr & ~0x40) | (feedback << 6);
+            }
+        } while (timer <= 0);
+    }
+
+    @Override
+    int output() {
+        return enabled && (lfsr & 1) == 0 ? envelope.volume : 0;
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        envelope.saveState(out);
+        out.put((byte) ((shift << 4) | (shortMode ? 0x08 : 0) | divisorCode));
+        out.putInt(timer).putShort((short) lfsr);
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        envelope.loadState(in);
+        int value = in.get() & 0xFF;
+        shift = value >> 4;
+        shortMode = (value & 0x08) != 0;
+        divisorCode = value & 0x07;
+        timer = in.getInt();
+        lfsr = in.getShort() & 0x7FFF;
+    }
+}
@@ -0,0 +1,390 @@
+package dev.emulator.hardware;
+
+import dev.emulator.display.FrameSink;
+import dev.emulator.display.FrameSkipPolicy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class Ppu {
+    // --- LINE TIMING (cycles) ---
+    // Every line is 456 cycles: OAM scan (mode 2), pixel transfer (mode 3), H-Blank (mode 0).
+    // Lines 144-153 are V-Blank (mode 1).
+    private static final int OAM_SCAN_CYCLES = 80;
+    private static final int TRANSFER_CYCLES = 172;
+    private static final int HBLANK_CYCLES = 204;
+    private static final int LINE_CYCLES = 456;
+
+    // ARGB of the four DMG shades: White, Light Gray, Dark Gray, Black
+    private static final int[] SHADES = { 0xFFFFFFFF, 0xFFC0C0C0, 0xFF606060, 0xFF000000 };
+
+    private final InterruptManager interruptManager;
+    private final Scheduler scheduler;
+    private final FrameSink display;
+
+    // Frame skipping: whether the current frame is being drawn, and how many were drawn or not
+    private FrameSkipPolicy frameSkip = FrameSkipPolicy.NONE;
+    private boolean rendering = true;
+    private long renderedFrames;
+    private long skippedFrames;
+
+    // Memory
+    // VRAM as 32 pages of 256 bytes: the bus maps them one by one, and a fork shares them
+    // copy-on-write (the bus swaps in a copy before the first write to a shared page)
+    private final byte[][] vram;
+    // OAM is 0xA0 bytes, but it is kept as a whole 256-byte page so the bus can map it directly.
+    // The unusable tail (0xFEA0-0xFEFF) is never written and always reads 0xFF.
+    private final byte[] oam;
+
+    // Rendering state, allocated with the first line drawn (a fork that never draws never has one):
+    // Local Frame Buffer (160 * 144 pixels)
+    private int[] frameBuffer;
+    // Tile data (0x8000-0x97FF) already decoded to color IDs
+    private TileCache tiles;
+    // Sprites of each line in priority order, rebuilt after OAM or the sprite size changes
+    private SpriteIndex sprites;
+
+    // Registers
+    private int lcdc = 0x91;
+    private int stat = 0x02; // Mode 2: line 0 starts with an OAM scan
+    private int scy = 0;
+    private int scx = 0;
+    private int ly = 0;
+    private int lyc = 0;
+    private int bgp = 0xFC;
+    private int obp0 = 0xFF;
+    private int obp1 = 0xFF;
+    // Color ID -> ARGB through each palette, rebuilt when BGP/OBP0/OBP1 are written
+    private final int[] bgColors = new int[4];
+    private final int[] obp0Colors = new int[4];
+    private final int[] obp1Colors = new int[4];
+    private int wy = 0;
+    private int wx = 0;
+
+    public Ppu(InterruptManager interruptManager, Scheduler scheduler, FrameSink display) {
+        this.interruptManager = interruptManager;
+        this.scheduler = scheduler;
+        this.display = display;
+        this.vram = new byte[32][0x100];
+        this.oam = new byte[0x100];
+        Arrays.fill(oam, 0xA0, 0x100, (byte) 0xFF);
+        buildPalette(bgColors, bgp);
+        buildPalette(obp0Colors, obp0);
+        buildPalette(obp1Colors, obp1);
+
+        compareLy();
+        scheduler.setHandler(Scheduler.PPU, this::onModeEnd);
+        scheduler.schedule(Scheduler.PPU, scheduler.now() + OAM_SCAN_CYCLES);
+    }
+
+    // Same state as source, sharing its VRAM pages (the bus marks them copy-on-write) on a
+    // scheduler that already carries its pending mode change. The frame in progress is not
+    // drawn, since the pixels of its first lines are source's; frame skipping starts as NONE.
+    public Ppu(Ppu source, InterruptManager interruptManager, Scheduler scheduler, FrameSink display) {
+        this.interruptManager = interruptManager;
+        this.scheduler = scheduler;
+        this.display = display;
+        this.vram = source.vram.clone();
+        this.oam = source.oam.clone();
+        this.rendering = false;
+
+        this.lcdc = source.lcdc;
+        this.stat = source.stat;
+        this.scy = source.scy;
+        this.scx = source.scx;
+        this.ly = source.ly;
+        this.lyc = source.lyc;
+        this.bgp = source.bgp;
+        this.obp0 = source.obp0;
+        this.obp1 = source.obp1;
+        this.wy = source.wy;
+        this.wx = source.wx;
+        buildPalette(bgColors, bgp);
+        buildPalette(obp0Colors, obp0);
+        buildPalette(obp1Colors, obp1);
+
+        scheduler.setHandler(Scheduler.PPU, this::onModeEnd);
+    }
+
+    // Backing arrays, mapped straight into the bus page table for reads
+    public byte[][] getVram() { return vram; }
+    public byte[] getOam() { return oam; }
+
+    // Takes effect from the next frame
+    public void setFrameSkip(FrameSkipPolicy frameSkip) { this.frameSkip = frameSkip; }
+    public long getRenderedFrames() { return renderedFrames; }
+    public long getSkippedFrames() { return skippedFrames; }
+
+    // Scheduler event: the current mode is over, move to the next one and book its end
+    private void onModeEnd(long time) {
+        switch (stat & 0x03) {
+            case 2: // OAM scan -> Pixel transfer
+                setMode(3);
+                scheduler.schedule(Scheduler.PPU, time + TRANSFER_CYCLES);
+                break;
+            case 3: // Pixel transfer -> H-Blank (the line is drawn here, with the registers it ended with)
+                if (rendering) drawScanline();
+                setMode(0);
+                scheduler.schedule(Scheduler.PPU, time + HBLANK_CYCLES);
+                break;
+            case 0: // H-Blank -> next line
+                ly++;
+                if (ly == 144) {
+                    setMode(1);
+                    interruptManager.requestInterrupt(0);
+                    // SEND BUFFER TO DISPLAY ONCE PER FRAME
+                    if (rendering && frameBuffer != null) { // Not yet allocated: nothing was ever drawn
+                        display.refreshFrame(frameBuffer);
+                        renderedFrames++;
+                    } else {
+                        skippedFrames++;
+                    }
+                    scheduler.schedule(Scheduler.PPU, time + LINE_CYCLES);
+                } else {
+                    setMode(2);
+                    scheduler.schedule(Scheduler.PPU, time + OAM_SCAN_CYCLES);
+                }
+                compareLy();
+                break;
+            case 1: // V-Blank line done
+                ly++;
+                if (ly > 153) {
+                    ly = 0;
+                    rendering = frameSkip.renderFrame();
+                    setMode(2);
+                    scheduler.schedule(Scheduler.PPU, time + OAM_SCAN_CYCLES);
+                } else {
+                    scheduler.schedule(Scheduler.PPU, time + LINE_CYCLES);
+                }
+                compareLy();
+                break;
+        }
+    }
+
+    // Updates the STAT mode bits and raises the STAT interrupt if that mode's source is enabled
+    private void setMode(int mode) {
+        stat = (stat & ~0x03) | mode;
+        // Bit 3: H-Blank, Bit 4: V-Blank, Bit 5: OAM scan
+        if (mode != 3 && (stat & (0x08 << mode)) != 0) {
+            interruptManager.requestInterrupt(1);
+        }
+    }
+
+    // LY == LYC coincidence (STAT bit 2), with its interrupt source (bit 6)
+    private void compareLy() {
+        if (ly == lyc) {
+            stat |= 0x04;
+            if ((stat & 0x40) != 0) interruptManager.requestInterrupt(1);
+        } else {
+            stat &= ~0x04;
+        }
+    }
+
+    private void writeLcdc(int value) {
+        boolean wasOn = (lcdc & 0x80) != 0;
+        boolean on = (value & 0x80) != 0;
+        if (((lcdc ^ value) & 0x04) != 0 && sprites != null) sprites.invalidate(); // Sprite size
+        lcdc = value;
+
+        if (wasOn && !on) {
+            // LCD off: LY stays 0 in mode 0 and the PPU stops
+            ly = 0;
+            stat &= ~0x03;
+            scheduler.cancel(Scheduler.PPU);
+        } else if (!wasOn && on) {
+            // LCD on: restart from the top of the frame
+            ly = 0;
+            rendering = frameSkip.renderFrame();
+            stat = (stat & ~0x03) | 2;
+            compareLy();
+            scheduler.schedule(Scheduler.PPU, scheduler.now() + OAM_SCAN_CYCLES);
+        }
+    }
+
+    // VRAM, OAM and the registers. The frame buffer is not saved: the first frame after a load
+    // is complete again, only the one in progress can show lines drawn before it.
+    public void saveState(ByteBuffer out) {
+        for (byte[] page : vram) out.put(page);
+        out.put(oam, 0, 0xA0);
+        out.put((byte) lcdc).put((byte) stat).put((byte) scy).put((byte) scx).put((byte) ly).put((byte) lyc);
+        out.put((byte) bgp).put((byte) obp0).put((byte) obp1).put((byte) wy).put((byte) wx);
+    }
+
+    public void loadState(ByteBuffer in) {
+        for (byte[] page : vram) in.get(page);
+        in.get(oam, 0, 0xA0);
+        lcdc = in.get() & 0xFF;
+        stat = in.get() & 0xFF;
+        scy = in.get() & 0xFF;
+        scx = in.get() & 0xFF;
+        ly = in.get() & 0xFF;
+        lyc = in.get() & 0xFF;
+        bgp = in.get() & 0xFF;
+        obp0 = in.get() & 0xFF;
+        obp1 = in.get() & 0xFF;
+        wy = in.get() & 0xFF;
+        wx = in.get() & 0xFF;
+
+        if (tiles != null) {
+            tiles.invalidateAll();
+            sprites.invalidate();
+        }
+        buildPalette(bgColors, bgp);
+        buildPalette(obp0Colors, obp0);
+        buildPalette(obp1Colors, obp1);
+    }
+
+    // Moves the PPU onto a line without running its timing (used by the benchmarks)
+    void seekLine(int line) {
+        ly = line;
+    }
+
+    void drawScanline() {
+        ensureRenderState();
+        if ((lcdc & 0x01) != 0) renderBackground();
+        if ((lcdc & 0x20) != 0) renderWindow();
+        if ((lcdc & 0x02) != 0) renderSprites();
+    }
+
+    private void ensureRenderState() {
+        if (frameBuffer != null) return;
+        frameBuffer = new int[160 * 144];
+        tiles = new TileCache(vram);
+        sprites = new SpriteIndex(oam);
+    }
+
+    private static void buildPalette(int[] colors, int palette) {
+        for (int colorId = 0; colorId < 4; colorId++) {
+            colors[colorId] = SHADES[(palette >> (colorId * 2)) & 0x03];
+        }
+    }
+
+    void renderBackground() {
+        ensureRenderState();
+        int yPos = (ly + scy) & 0xFF;
+        int mapOffset = ((lcdc & 0x08) != 0) ? 0x1C00 : 0x1800;
+        // The first tile is cut by SCX's fine scroll, so the spans start up to 7 pixels off screen
+        renderTiles(mapOffset + (yPos / 8) * 32, scx >> 3, yPos & 7, -(scx & 7));
+    }
+
+    void renderWindow() {
+        ensureRenderState();
+        int windowX = wx - 7;
+        if (ly < wy || windowX >= 160) return;
+
+        int mapOffset = ((lcdc & 0x40) != 0) ? 0x1C00 : 0x1800;
+        int yPos = ly - wy;
+        renderTiles(mapOffset + (yPos / 8) * 32, 0, yPos & 7, windowX);
+    }
+
+    // Draws one line of a tile map from screen X `x` to the right edge, 8 pixels per tile. Only
+    // the first and last spans can be clipped; the range is worked out once per span.
+    private void renderTiles(int mapRow, int tileCol, int line, int x) {
+        byte[] pixels = tiles.pixels();
+        int[] colors = bgColors;
+        int[] frame = frameBuffer;
+        int lineStart = ly * 160;
+        // A map row is 32 bytes, so it never straddles two pages
+        byte[] map = vram[mapRow >> 8];
+        int mapStart = mapRow & 0xFF;
+
+        for (; x < 160; x += 8, tileCol++) {
+            int tileNum = map[mapStart + (tileCol & 0x1F)] & 0xFF;
+            int row = tiles.row(tileIndex(tileNum), line);
+            int from = x < 0 ? -x : 0;
+            int to = x > 152 ? 160 - x : 8;
+            int out = lineStart + x;
+            for (int i = from; i < to; i++) {
+                frame[out + i] = colors[pixels[row + i]];
+            }
+        }
+    }
+
+    void renderSprites() {
+        ensureRenderState();
+        int height = (lcdc & 0x04) != 0 ? 16 : 8;
+        int count = sprites.select(ly, height);
+        int[] entries = sprites.entries();
+        int base = ly * SpriteIndex.MAX_PER_LINE;
+        int[] frame = frameBuffer;
+        int lineStart = ly * 160;
+
+        // Lowest priority first, so the sprite that wins an overlap is drawn last
+        for (int n = count - 1; n >= 0; n--) {
+            int index = entries[base + n];
+            int yPos = (oam[index] & 0xFF) - 16;
+            int xPos = (oam[index + 1] & 0xFF) - 8;
+            int tileLocation = oam[index + 2] & 0xFF;
+            int attributes = oam[index + 3] & 0xFF;
+
+            int line = ly - yPos;
+            if ((attributes & 0x40) != 0) line = height - 1 - line;
+            if (height == 16) tileLocation &= 0xFE;
+
+            // X-flipped sprites read the mirrored copy; 8x16 sprites continue into the next tile
+            byte[] pixels = (attributes & 0x20) != 0 ? tiles.flipped() : tiles.pixels();
+            int row = tiles.row(tileLocation + (line >> 3), line & 7);
+            int[] colors = (attributes & 0x10) != 0 ? obp1Colors : obp0Colors;
+
+            int from = xPos < 0 ? -xPos : 0;
+            int to = xPos > 152 ? 160 - xPos : 8;
+            int out = lineStart + xPos;
+            for (int tilePixel = from; tilePixel < to; tilePixel++) {
+                int col = pixels[row + tilePixel];
+                if (col != 0) frame[out + tilePixel] = colors[col]; // 0 is transparent
+            }
+        }
+    }
+
+    // Tile cache index of a background/window tile number: LCDC bit 4 selects unsigned tiles from
+    // 0x8000, otherwise they are signed from 0x9000 (cache tiles 256-383, then 128-255)
+    private int tileIndex(int tileNum) {
+        return (lcdc & 0x10) != 0 ? tileNum : 256 + (byte) tileNum;
+    }
+
+    // Bus Interface
+    public int readByte(int address) {
+        if (address >= 0x8000 && address < 0xA000) return vram[(address >> 8) - 0x80][address & 0xFF] & 0xFF;
+        if (address >= 0xFE00 && address < 0xFEA0) return oam[address - 0xFE00] & 0xFF;
+        switch (address) {
+            case 0xFF40: return lcdc;
+            case 0xFF41: return stat | 0x80;
+            case 0xFF42: return scy;
+            case 0xFF43: return scx;
+            case 0xFF44: return ly;
+            case 0xFF45: return lyc;
+            case 0xFF47: return bgp;
+            case 0xFF48: return obp0;
+            case 0xFF49: return obp1;
+            case 0xFF4A: return wy;
+            case 0xFF4B: return wx;
+            default: return 0xFF;
+        }
+    }
+
+    public void writeByte(int address, int value) {
+        if (address >= 0x8000 && address < 0xA000) {
+            vram[(address >> 8) - 0x80][address & 0xFF] = (byte) value;
+            if (tiles != null) tiles.written(address - 0x8000);
+            return;
+        }
+        if (address >= 0xFE00 && address < 0xFEA0) {
+            oam[address - 0xFE00] = (byte) value;
+            if (sprites != null) sprites.invalidate();
+            return;
+        }
+        switch (address) {
+            case 0xFF40: writeLcdc(value); break;
+            case 0xFF41: stat = (stat & 0x07) | (value & 0x78); break; // Mode and coincidence bits are read-only
+            case 0xFF42: scy = value; break;
+            case 0xFF43: scx = value; break;
+            case 0xFF44: ly = 0; compareLy(); break;
+            case 0xFF45: lyc = value; compareLy(); break;
+            case 0xFF47: bgp = value; buildPalette(bgColors, value); break;
+            case 0xFF48: obp0 = value; buildPalette(obp0Colors, value); break;
+            case 0xFF49: obp1 = value; buildPalette(obp1Colors, value); break;
+            case 0xFF4A: wy = value; break;
+            case 0xFF4B: wx = value; break;
+        }
+    }
+}
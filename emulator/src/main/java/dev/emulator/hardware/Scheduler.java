@@ -0,0 +1,112 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongSupplier;
+
+/**
+ * Cycle-based event scheduler for the hardware.
+ * Instead of being ticked after every instruction, each component books the cycle at which
+ * something will next happen to it (a TIMA overflow, a PPU mode change, a batch of sound
+ * samples) in its own slot.
+ * The CPU runs freely until the earliest of those deadlines and then calls {@link #runUntil}.
+ * Register reads in between catch the component up on demand using {@link #now()}.
+ */
+public class Scheduler {
+    // --- EVENT SLOTS (one per component, a component has at most one pending event) ---
+    public static final int TIMER = 0;
+    public static final int PPU = 1;
+    // Booked for "now" by the bus when a bank switch remaps ROM, so the CPU stops running code
+    // it decoded from the old bank; the event itself does nothing
+    public static final int BANK_SWITCH = 2;
+    // Sound samples made so far go to the audio sink (only booked while there is one)
+    public static final int APU = 3;
+    private static final int SLOT_COUNT = 4;
+
+    public static final long NEVER = Long.MAX_VALUE;
+
+    public interface Handler {
+        // Called with the cycle the event was booked for (which may be slightly in the past)
+        void onEvent(long time);
+    }
+
+    // With this few slots a linear scan is the cheapest priority queue
+    private final long[] deadlines = new long[SLOT_COUNT];
+    private final Handler[] handlers = new Handler[SLOT_COUNT];
+    private long nextDeadline = NEVER;
+
+    // The master clock lives in the CPU; until one is attached, time stands still at 0
+    private LongSupplier clock = () -> 0;
+
+    public Scheduler() {
+        for (int i = 0; i < SLOT_COUNT; i++) deadlines[i] = NEVER;
+    }
+
+    // Same pending deadlines as source; handlers and clock are wired up again by the new machine
+    public Scheduler(Scheduler source) {
+        System.arraycopy(source.deadlines, 0, deadlines, 0, SLOT_COUNT);
+        nextDeadline = source.nextDeadline;
+    }
+
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    public void setHandler(int slot, Handler handler) {
+        handlers[slot] = handler;
+    }
+
+    public void schedule(int slot, long time) {
+        deadlines[slot] = time;
+        updateNextDeadline();
+    }
+
+    public void cancel(int slot) {
+        deadlines[slot] = NEVER;
+        updateNextDeadline();
+    }
+
+    public long getDeadline(int slot) {
+        return deadlines[slot];
+    }
+
+    // Earliest pending event; the CPU does not need to look at the hardware before this cycle
+    public long nextDeadline() {
+        return nextDeadline;
+    }
+
+    // Pending deadlines (the handlers are wired up by the components themselves)
+    public void saveState(ByteBuffer out) {
+        for (long deadline : deadlines) out.putLong(deadline);
+    }
+
+    public void loadState(ByteBuffer in) {
+        for (int i = 0; i < SLOT_COUNT; i++) deadlines[i] = in.getLong();
+        updateNextDeadline();
+    }
+
+    // Fires every event due at or before now, in time order
+    public void runUntil(long now) {
+        while (nextDeadline <= now) {
+            int slot = 0;
+            for (int i = 1; i < SLOT_COUNT; i++) {
+                if (deadlines[i] < deadlines[slot]) slot = i;
+            }
+            long time = deadlines[slot];
+            deadlines[slot] = NEVER;
+            handlers[slot].onEvent(time); // Usually books the next event in the same slot
+            updateNextDeadline();
+        }
+    }
+
+    private void updateNextDeadline() {
+        long next = NEVER;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            if (deadlines[i] < next) next = deadlines[i];
+        }
+        nextDeadline = next;
+    }
+}
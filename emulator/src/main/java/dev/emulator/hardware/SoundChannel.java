@@ -0,0 +1,112 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What the four sound channels have in common: the DAC, which silences the channel when off,
+ * and the length counter, which stops it after a set time.
+ *
+ * A channel is written through its five registers (NRx0-NRx4, see {@link #write}), clocked by
+ * the frame sequencer (length, and envelope or sweep where it has them) and, only while samples
+ * are being made, moved along its waveform a number of cycles at a time (see {@link #advance}).
+ */
+abstract class SoundChannel {
+    // Playing: the channel's bit in NR52
+    boolean enabled;
+    // While off, the channel outputs nothing and cannot be triggered into playing
+    boolean dacEnabled;
+    private final int maxLength;
+    private int length;
+    private boolean lengthEnabled;
+
+    SoundChannel(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    // Register 0-4 (NRx0-NRx4) of this channel
+    abstract void write(int register, int value);
+
+    // Cycles of the waveform, and its value now: 0-15, the DAC input
+    abstract void advance(int cycles);
+    abstract int output();
+
+    // NRx1: what the length counter counts down from
+    final void loadLength(int value) {
+        length = maxLength - value;
+    }
+
+    // NRx4: length enable (bit 6) and trigger (bit 7)
+    final void writeControl(int value) {
+        lengthEnabled = (value & 0x40) != 0;
+        if ((value & 0x80) != 0) trigger();
+    }
+
+    void trigger() {
+        enabled = dacEnabled;
+        if (length == 0) length = maxLength;
+    }
+
+    final void setDacEnabled(boolean on) {
+        dacEnabled = on;
+        if (!on) enabled = false;
+    }
+
+    // Frame sequencer, 256 Hz
+    final void clockLength() {
+        if (lengthEnabled && length > 0 && --length == 0) enabled = false;
+    }
+
+    void saveState(ByteBuffer out) {
+        out.put((byte) ((enabled ? 1 : 0) | (dacEnabled ? 2 : 0) | (lengthEnabled ? 4 : 0)));
+        out.putShort((short) length);
+    }
+
+    void loadState(ByteBuffer in) {
+        int flags = in.get();
+        enabled = (flags & 1) != 0;
+        dacEnabled = (flags & 2) != 0;
+        lengthEnabled = (flags & 4) != 0;
+        length = in.getShort() & 0xFFFF;
+    }
+
+    // --- Volume envelope of the square and noise channels (NRx2) ---
+    static final class Envelope {
+        private int initialVolume;
+        private boolean increase;
+        private int period;
+        private int timer;
+        int volume;
+
+        // NRx2; returns whether the DAC is on (any of the upper five bits set)
+        boolean write(int value) {
+            initialVolume = value >> 4;
+            increase = (value & 0x08) != 0;
+            period = value & 0x07;
+            return (value & 0xF8) != 0;
+        }
+
+        void trigger() {
+            volume = initialVolume;
+            timer = period != 0 ? period : 8;
+        }
+
+        // Frame sequencer, 64 Hz: one step up or down every `period` clocks (never with period 0)
+        void clock() {
+            if (period == 0 || --timer > 0) return;
+            timer = period;
+            if (increase && volume < 15) volume++;
+            else if (!increase && volume > 0) volume--;
+        }
+
+        void saveState(ByteBuffer out) {
+            out.put((byte) ((initialVolume << 4) | (increase ? 0x08 : 0) | period));
+            out.put((byte) timer).put((byte) volume);
+        }
+
+        void loadState(ByteBuffer in) {
+            write(in.get() & 0xFF);
+            timer = in.get();
+            volume = in.get();
+        }
+    }
+}
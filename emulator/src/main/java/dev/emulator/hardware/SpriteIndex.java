@@ -0,0 +1,61 @@
+package dev.emulator.hardware;
+
+import java.util.Arrays;
+
+/**
+ * The sprites on each visible line, as the OAM scan picks them: the first ten in OAM order whose
+ * rows cover the line, whatever their X. Each line's list is sorted by drawing priority (lowest
+ * X first, then lowest OAM index). The whole index is rebuilt the first time a line is asked for
+ * after OAM or the sprite size changed, which in practice is once per frame after the DMA.
+ */
+final class SpriteIndex {
+    static final int MAX_PER_LINE = 10;
+    private static final int LINES = 144;
+
+    private final byte[] oam;
+    // OAM offsets of each line's sprites, MAX_PER_LINE slots per line, highest priority first
+    private final int[] entries = new int[LINES * MAX_PER_LINE];
+    private final int[] counts = new int[LINES];
+    private boolean dirty = true;
+
+    SpriteIndex(byte[] oam) {
+        this.oam = oam;
+    }
+
+    // OAM was written or the sprite height changed
+    void invalidate() {
+        dirty = true;
+    }
+
+    // Number of sprites on the line; their OAM offsets start at entries()[line * MAX_PER_LINE]
+    int select(int line, int height) {
+        if (dirty) rebuild(height);
+        return counts[line];
+    }
+
+    int[] entries() { return entries; }
+
+    private void rebuild(int height) {
+        dirty = false;
+        Arrays.fill(counts, 0);
+        for (int offset = 0; offset < 0xA0; offset += 4) {
+            int top = (oam[offset] & 0xFF) - 16;
+            int x = oam[offset + 1] & 0xFF;
+            int last = Math.min(top + height, LINES);
+            for (int line = Math.max(top, 0); line < last; line++) {
+                int count = counts[line];
+                if (count == MAX_PER_LINE) continue;
+
+                // Insertion by X: a later OAM entry with the same X goes after the earlier one
+                int base = line * MAX_PER_LINE;
+                int slot = count;
+                while (slot > 0 && (oam[entries[base + slot - 1] + 1] & 0xFF) > x) {
+                    entries[base + slot] = entries[base + slot - 1];
+                    slot--;
+                }
+                entries[base + slot] = offset;
+                counts[line] = count + 1;
+            }
+        }
+    }
+}
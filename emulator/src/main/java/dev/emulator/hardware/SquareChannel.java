@@ -0,0 +1,145 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Channels 1 and 2: a square wave with four duty cycles and a volume envelope. Channel 1 also
+ * has the frequency sweep (NR10), which moves its frequency up or down at 128 Hz and cuts the
+ * channel off when it would go past the top.
+ */
+final class SquareChannel extends SoundChannel {
+    // Waveform of each duty cycle (12.5%, 25%, 50%, 75%), one bit per step, first step on top
+    private static final int[] DUTY = { 0b00000001, 0b10000001, 0b10000111, 0b01111110 };
+
+    private final boolean hasSweep;
+    private final Envelope envelope = new Envelope();
+    private int duty;
+    // 11 bits; a step of the waveform lasts (2048 - frequency) * 4 cycles
+    private int frequency;
+    private int timer;
+    private int step;
+
+    // --- Sweep (channel 1 only) ---
+    private int sweepPeriod;
+    private boolean sweepDown;
+    private int sweepShift;
+    private boolean sweepEnabled;
+    private int sweepTimer;
+    private int shadowFrequency;
+
+    SquareChannel(boolean hasSweep) {
+        super(64);
+        this.hasSweep = hasSweep;
+    }
+
+    @Override
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                if (!hasSweep) return;
+                sweepPeriod = (value >> 4) & 0x07;
+                sweepDown = (value & 0x08) != 0;
+                sweepShift = value & 0x07;
+                break;
+            case 1:
+                duty = value >> 6;
+                loadLength(value & 0x3F);
+                break;
+            case 2:
+                setDacEnabled(envelope.write(value));
+                break;
+            case 3:
+                frequency = (frequency & 0x700) | value;
+                break;
+            case 4:
+                frequency = (frequency & 0xFF) | ((value & 0x07) << 8);
+                writeControl(value);
+                break;
+        }
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        envelope.trigger();
+        if (hasSweep) {
+            shadowFrequency = frequency;
+            sweepTimer = sweepPeriod != 0 ? sweepPeriod : 8;
+            sweepEnabled = sweepPeriod != 0 || sweepShift != 0;
+            if (sweepShift != 0) sweptFrequency(); // Only checks for overflow
+        }
+    }
+
+    private int period() {
+        return (2048 - frequency) * 4;
+    }
+
+    // Frame sequencer, 128 Hz
+    void clockSweep() {
+        if (--sweepTimer > 0) return;
+        sweepTimer = sweepPeriod != 0 ? sweepPeriod : 8;
+        if (!sweepEnabled || sweepPeriod == 0) return;
+
+        int next = sweptFrequency();
+        if (next <= 0x7FF && sweepShift != 0) {
+            shadowFrequency = next;
+            frequency = next;
+            sweptFrequency(); // The one after is checked for overflow right away
+        }
+    }
+
+    // The frequency one sweep step on; going past 2047 turns the channel off
+    private int sweptFrequency() {
+        int delta = shadowFrequency >> sweepShift;
+        int next = sweepDown ? shadowFrequency - delta : shadowFrequency + delta;
+        if (next > 0x7FF) enabled = false;
+        return next;
+    }
+
+    void clockEnvelope() {
+        envelope.clock();
+    }
+
+    @Override
+    void advance(int cycles) {
+        timer -= cycles;
+        if (timer > 0) return;
+        int period = period();
+        int steps = -timer / period + 1;
+        step = (step + steps) & 7;
+        timer += steps * period;
+    }
+
+    @Override
+    int output() {
+        if (!enabled || ((DUTY[duty] >> (7 - step)) & 1) == 0) return 0;
+        return envelope.volume;
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        envelope.saveState(out);
+        out.put((byte) duty).putShort((short) frequency).putInt(timer).put((byte) step);
+        out.put((byte) ((sweepPeriod << 4) | (sweepDown ? 0x08 : 0) | sweepShift));
+        out.put((byte) (sweepEnabled ? 1 : 0)).put((byte) sweepTimer).putShort((short) shadowFrequency);
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        envelope.loadState(in);
+        duty = in.get() & 0x03;
+        frequency = in.getShort() & 0x7FF;
+        timer = in.getInt();
+        step = in.get() & 0x07;
+        int sweep = in.get() & 0xFF;
+        sweepPeriod = (sweep >> 4) & 0x07;
+        sweepDown = (sweep & 0x08) != 0;
+        sweepShift = sweep & 0x07;
+        sweepEnabled = in.get() != 0;
+        sweepTimer = in.get();
+        shadowFrequency = in.getShort() & 0xFFFF;
+    }
+}
@@ -0,0 +1,60 @@
+package dev.emulator.hardware;
+
+import java.util.Arrays;
+
+/**
+ * The 384 tiles of VRAM (0x8000-0x97FF) decoded to one 2-bit color ID per byte, 8 per row,
+ * both as stored and mirrored for X-flipped sprites. A write to a tile's 16 bytes only marks it
+ * dirty; it is decoded again the next time a renderer asks for one of its rows.
+ */
+final class TileCache {
+    static final int TILE_COUNT = 384;
+
+    // VRAM as 256-byte pages (a tile's 16 bytes never straddle two)
+    private final byte[][] vram;
+    private final byte[] pixels = new byte[TILE_COUNT * 64];
+    private final byte[] flipped = new byte[TILE_COUNT * 64];
+    private final boolean[] dirty = new boolean[TILE_COUNT];
+
+    TileCache(byte[][] vram) {
+        this.vram = vram;
+        Arrays.fill(dirty, true);
+    }
+
+    // Called for every write to VRAM, with the offset into it
+    void written(int offset) {
+        if (offset < TILE_COUNT * 16) dirty[offset >> 4] = true;
+    }
+
+    // All of VRAM was replaced (save state load)
+    void invalidateAll() {
+        Arrays.fill(dirty, true);
+    }
+
+    // Decoded rows, 8 color IDs each: index with row()
+    byte[] pixels() { return pixels; }
+    byte[] flipped() { return flipped; }
+
+    // Where row `line` (0-7) of the tile starts in pixels() and flipped()
+    int row(int tile, int line) {
+        if (dirty[tile]) decode(tile);
+        return (tile << 6) | (line << 3);
+    }
+
+    private void decode(int tile) {
+        dirty[tile] = false;
+        byte[] page = vram[tile >> 4];
+        int data = (tile & 0x0F) << 4;
+        int out = tile << 6;
+        for (int line = 0; line < 8; line++, out += 8) {
+            int low = page[data + line * 2] & 0xFF;
+            int high = page[data + line * 2 + 1] & 0xFF;
+            for (int x = 0; x < 8; x++) {
+                int bit = 7 - x;
+                byte color = (byte) ((((high >> bit) & 1) << 1) | ((low >> bit) & 1));
+                pixels[out + x] = color;
+                flipped[out + 7 - x] = color;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+
+public class Timer {
+    private final InterruptManager interruptManager;
+    private final Scheduler scheduler;
+
+    // DIV register (0xFF04): Increments every 256 cycles.
+    // Not counted: it is derived from the cycle of the last reset.
+    private long divEpoch = 0;
+
+    // TIMA (0xFF05): Timer Counter.
+    // Value as of timaEpoch; while enabled it goes up by one every getThreshold() cycles.
+    private int tima = 0;
+    private long timaEpoch = 0;
+    // Cycles towards the next increment, kept while the timer is stopped
+    private long pausedProgress = 0;
+
+    // TMA (0xFF06): Timer Modulo (Reset value for TIMA)
+    private int tma = 0;
+
+    // TAC (0xFF07): Timer Control
+    private int tac = 0;
+
+    public Timer(InterruptManager interruptManager, Scheduler scheduler) {
+        this.interruptManager = interruptManager;
+        this.scheduler = scheduler;
+        scheduler.setHandler(Scheduler.TIMER, this::catchUp);
+    }
+
+    // Same state as source, on a scheduler that already carries source's pending overflow
+    public Timer(Timer source, InterruptManager interruptManager, Scheduler scheduler) {
+        this(interruptManager, scheduler);
+        this.divEpoch = source.divEpoch;
+        this.tima = source.tima;
+        this.timaEpoch = source.timaEpoch;
+        this.pausedProgress = source.pausedProgress;
+        this.tma = source.tma;
+        this.tac = source.tac;
+    }
+
+    // Brings TIMA up to date, handling any overflows on the way, and books the next overflow
+    private void catchUp(long now) {
+        if ((tac & 0x04) == 0) return;
+
+        int threshold = getThreshold();
+        long steps = (now - timaEpoch) / threshold;
+        while (tima + steps > 0xFF) {
+            timaEpoch += (long) (0x100 - tima) * threshold;
+            tima = tma; // Reset to TMA
+            interruptManager.requestInterrupt(2); // Request Timer Interrupt
+            steps = (now - timaEpoch) / threshold;
+        }
+        tima += (int) steps;
+        timaEpoch += steps * threshold;
+
+        scheduler.schedule(Scheduler.TIMER, timaEpoch + (long) (0x100 - tima) * threshold);
+    }
+
+    // Epochs are absolute cycles, so they only make sense together with the CPU clock they were saved with
+    public void saveState(ByteBuffer out) {
+        out.putLong(divEpoch).putLong(timaEpoch).putLong(pausedProgress);
+        out.put((byte) tima).put((byte) tma).put((byte) tac);
+    }
+
+    public void loadState(ByteBuffer in) {
+        divEpoch = in.getLong();
+        timaEpoch = in.getLong();
+        pausedProgress = in.getLong();
+        tima = in.get() & 0xFF;
+        tma = in.get() & 0xFF;
+        tac = in.get() & 0xFF;
+    }
+
+    private int getThreshold() {
+        switch (tac & 0x03) {
+            case 0: return 1024; // 4096 Hz
+            case 1: return 16;   // 262144 Hz
+            case 2: return 64;   // 65536 Hz
+            case 3: return 256;  // 16384 Hz
+            default: return 1024;
+        }
+    }
+
+    public int readByte(int address) {
+        switch (address) {
+            case 0xFF04: return (int) ((scheduler.now() - divEpoch) >> 8) & 0xFF;
+            case 0xFF05: catchUp(scheduler.now()); return tima;
+            case 0xFF06: return tma;
+            case 0xFF07: return tac;
+            default: return 0xFF;
+        }
+    }
+
+    public void writeByte(int address, int value) {
+        long now = scheduler.now();
+        catchUp(now);
+
+        switch (address) {
+            case 0xFF04: divEpoch = now; break; // Writing to DIV resets it to 0
+            case 0xFF05: tima = value; catchUp(now); break;
+            case 0xFF06: tma = value; break;
+            case 0xFF07: writeTac(now, value); break;
+        }
+    }
+
+    private void writeTac(long now, int value) {
+        boolean wasEnabled = (tac & 0x04) != 0;
+        boolean enabled = (value & 0x04) != 0;
+
+        if (wasEnabled && !enabled) {
+            pausedProgress = now - timaEpoch;
+            scheduler.cancel(Scheduler.TIMER);
+        } else if (!wasEnabled && enabled) {
+            timaEpoch = now - pausedProgress;
+        }
+
+        tac = value;
+        catchUp(now); // Reschedule with the new frequency
+    }
+}
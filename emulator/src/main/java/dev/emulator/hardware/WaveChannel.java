@@ -0,0 +1,87 @@
+package dev.emulator.hardware;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Channel 3: plays the 32 4-bit samples of wave RAM (0xFF30-0xFF3F, high nibble first) in a
+ * loop, at full volume or shifted down by 1 or 2 bits, or muted.
+ */
+final class WaveChannel extends SoundChannel {
+    final byte[] waveRam = new byte[16];
+    private int volumeCode;
+    // 11 bits; a sample lasts (2048 - frequency) * 2 cycles
+    private int frequency;
+    private int timer;
+    private int position;
+
+    WaveChannel() {
+        super(256);
+    }
+
+    @Override
+    void write(int register, int value) {
+        switch (register) {
+            case 0:
+                setDacEnabled((value & 0x80) != 0);
+                break;
+            case 1:
+                loadLength(value);
+                break;
+            case 2:
+                volumeCode = (value >> 5) & 0x03;
+                break;
+            case 3:
+                frequency = (frequency & 0x700) | value;
+                break;
+            case 4:
+                frequency = (frequency & 0xFF) | ((value & 0x07) << 8);
+                writeControl(value);
+                break;
+        }
+    }
+
+    @Override
+    void trigger() {
+        super.trigger();
+        timer = period();
+        position = 0;
+    }
+
+    private int period() {
+        return (2048 - frequency) * 2;
+    }
+
+    @Override
+    void advance(int cycles) {
+        timer -= cycles;
+        if (timer > 0) return;
+        int period = period();
+        int steps = -timer / period + 1;
+        position = (position + steps) & 31;
+        timer += steps * period;
+    }
+
+    @Override
+    int output() {
+        if (!enabled || volumeCode == 0) return 0;
+        int pair = waveRam[position >> 1];
+        int sample = (position & 1) == 0 ? (pair >> 4) & 0x0F : pair & 0x0F;
+        return sample >> (volumeCode - 1);
+    }
+
+    @Override
+    void saveState(ByteBuffer out) {
+        super.saveState(out);
+        out.put(waveRam).put((byte) volumeCode).putShort((short) frequency).putInt(timer).put((byte) position);
+    }
+
+    @Override
+    void loadState(ByteBuffer in) {
+        super.loadState(in);
+        in.get(waveRam);
+        volumeCode = in.get() & 0x03;
+        frequency = in.getShort() & 0x7FF;
+        timer = in.getInt();
+        position = in.get() & 31;
+    }
+}
@@ -0,0 +1,322 @@
+package dev.emulator.library;
+
+import dev.emulator.cartridge.Cartridge;
+import dev.emulator.cartridge.CartridgeHeader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The ROMs under a directory (and in zip archives there), with their headers, so a game can be
+ * found by title without opening every file.
+ *
+ * A scan walks the tree and reads only the first 0x150 bytes of each ROM, a zipped one included:
+ * the archive's central directory says where the entry is, and inflating stops after the header.
+ * Files are read on a small pool of threads, since the time goes into waiting on the disk.
+ *
+ * What was found is kept in an index file in the directory, keyed by each file's path, size and
+ * modification time; the next scan reads only files that are new or changed since. (An archive
+ * with no ROM in it has no entry, so it is looked through again each time.)
+ *
+ * Index format: magic, version, entry count, then per entry the file path (relative, '/'
+ * separated), zip member ("" for a plain file), file size, modification time, ROM size and the
+ * 28 header bytes.
+ */
+public final class RomLibrary {
+    public static final String INDEX_NAME = ".lr35902-library";
+    private static final int MAGIC = 0x4C524C49; // "LRLI"
+    private static final int VERSION = 1;
+
+    /** A ROM in the library: where it is, and its header. */
+    public static final class Entry {
+        private final String file;
+        private final String member;
+        private final long fileSize;
+        private final long lastModified;
+        private final int romSize;
+        private final CartridgeHeader header;
+        private String path;
+
+        Entry(String file, String member, long fileSize, long lastModified, int romSize, CartridgeHeader header) {
+            this.file = file;
+            this.member = member;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.romSize = romSize;
+            this.header = header;
+        }
+
+        // File path relative to the library, '/' separated
+        public String getFile() { return file; }
+        // Name of the ROM in the zip archive, or null for a plain file
+        public String getMember() { return member; }
+        // Size of the ROM image (not of the archive holding it)
+        public int getRomSize() { return romSize; }
+        public CartridgeHeader getHeader() { return header; }
+        public String getTitle() { return header.getTitle(); }
+
+        // The ROM's path as Cartridge.open() takes it
+        public String getPath() { return path; }
+
+        // File name of the ROM itself, without the directory or archive around it
+        public String getName() {
+            String name = member != null ? member : file;
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %-9s %5dKB  %s", getTitle(), header.getControllerName(), romSize / 1024,
+                    member != null ? file + Cartridge.ARCHIVE_SEPARATOR + member : file);
+        }
+    }
+
+    private final File root;
+    private final File indexFile;
+    private List<Entry> entries = Collections.emptyList();
+
+    // Stats of the last scan
+    private int files;
+    private int reused;
+    private int parsed;
+    private long scanNanos;
+
+    public RomLibrary(File root) {
+        this.root = root;
+        this.indexFile = new File(root, INDEX_NAME);
+    }
+
+    public List<Entry> getEntries() { return entries; }
+    // Files (ROMs and archives) seen by the last scan
+    public int getFileCount() { return files; }
+    // Of those, taken from the index as they were, and read again
+    public int getReusedCount() { return reused; }
+    public int getParsedCount() { return parsed; }
+    public long getScanMillis() { return scanNanos / 1_000_000; }
+
+    /**
+     * Brings the library up to date with the directory: reads the index, reads the files it does
+     * not cover (or that changed), and writes the index back if anything differs.
+     */
+    public void scan() throws IOException {
+        long start = System.nanoTime();
+        Map<String, List<Entry>> known = readIndex();
+
+        List<Path> candidates = new ArrayList<>();
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String name = file.getFileName().toString();
+                if (attributes.isRegularFile() && (Cartridge.isRomName(name) || isArchive(name))) candidates.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<Entry> found = new ArrayList<>();
+        List<Future<List<Entry>>> reads = new ArrayList<>();
+        int reusedFiles = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(2, 2 * Runtime.getRuntime().availableProcessors()), task -> {
+                    Thread thread = new Thread(task, "ROM library scan");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            for (Path path : candidates) {
+                File file = path.toFile();
+                String relative = relativize(path);
+                long size = file.length();
+                long lastModified = file.lastModified();
+
+                List<Entry> cached = known.remove(relative);
+                if (cached != null && !cached.isEmpty() && cached.get(0).fileSize == size
+                        && cached.get(0).lastModified == lastModified) {
+                    found.addAll(cached);
+                    reusedFiles++;
+                } else {
+                    reads.add(pool.submit(() -> read(file, relative, size, lastModified)));
+                }
+            }
+            for (Future<List<Entry>> read : reads) {
+                found.addAll(read.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Scan failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        found.sort(Comparator.comparing((Entry entry) -> entry.file)
+                .thenComparing(entry -> entry.member != null ? entry.member : ""));
+        for (Entry entry : found) {
+            entry.path = new File(root, entry.file).getPath()
+                    + (entry.member != null ? Cartridge.ARCHIVE_SEPARATOR + entry.member : "");
+        }
+        // Rewritten when a file was read, or one in the index is gone
+        if (!reads.isEmpty() || !known.isEmpty()) writeIndex(found);
+
+        this.entries = Collections.unmodifiableList(found);
+        this.files = candidates.size();
+        this.reused = reusedFiles;
+        this.parsed = reads.size();
+        this.scanNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * The ROM with this title (ignoring case), or failing that with this file name, with or
+     * without its extension; null if there is none.
+     */
+    public Entry find(String name) {
+        for (Entry entry : entries) {
+            if (entry.getTitle().equalsIgnoreCase(name)) return entry;
+        }
+        for (Entry entry : entries) {
+            String file = entry.getName();
+            int dot = file.lastIndexOf('.');
+            if (file.equalsIgnoreCase(name) || (dot > 0 && file.substring(0, dot).equalsIgnoreCase(name))) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isArchive(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    private String relativize(Path path) {
+        return root.toPath().relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    // --- Reading headers (pool threads) ---
+
+    // The ROMs in one file: itself, or those in the archive. Unreadable files are left out.
+    private static List<Entry> read(File file, String relative, long size, long lastModified) {
+        List<Entry> found = new ArrayList<>(1);
+        try {
+            if (!isArchive(file.getName())) {
+                try (InputStream in = new FileInputStream(file)) {
+                    CartridgeHeader header = readHeader(in);
+                    if (header != null) found.add(new Entry(relative, null, size, lastModified, (int) size, header));
+                }
+            } else {
+                try (ZipFile zip = new ZipFile(file)) {
+                    for (Enumeration<? extends ZipEntry> members = zip.entries(); members.hasMoreElements(); ) {
+                        ZipEntry member = members.nextElement();
+                        if (member.isDirectory() || !Cartridge.isRomName(member.getName())) continue;
+                        try (InputStream in = zip.getInputStream(member)) {
+                            CartridgeHeader header = readHeader(in);
+                            if (header != null) {
+                                found.add(new Entry(relative, member.getName(), size, lastModified,
+                                        (int) member.getSize(), header));
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Skipping " + relative + ": " + e.getMessage());
+        }
+        return found;
+    }
+
+    // The header from the first 0x150 bytes of the stream, or null if it is shorter than that
+    private static CartridgeHeader readHeader(InputStream in) throws IOException {
+        byte[] start = new byte[CartridgeHeader.END];
+        int filled = 0;
+        while (filled < start.length) {
+            int read = in.read(start, filled, start.length - filled);
+            if (read < 0) return null;
+            filled += read;
+        }
+        return new CartridgeHeader(Arrays.copyOfRange(start, start.length - CartridgeHeader.SIZE, start.length));
+    }
+
+    // --- Index ---
+
+    // Entries of the index by file (an empty map if there is none or it cannot be read)
+    private Map<String, List<Entry>> readIndex() {
+        Map<String, List<Entry>> known = new HashMap<>();
+        if (!indexFile.isFile()) return known;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return known;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String file = in.readUTF();
+                String member = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int romSize = in.readInt();
+                byte[] header = new byte[CartridgeHeader.SIZE];
+                in.readFully(header);
+                known.computeIfAbsent(file, key -> new ArrayList<>(1)).add(new Entry(file,
+                        member.isEmpty() ? null : member, size, lastModified, romSize, new CartridgeHeader(header)));
+            }
+        } catch (IOException e) {
+            // Truncated or from somewhere else: everything is read again and the index rewritten
+            known.clear();
+        }
+        return known;
+    }
+
+    // Written next to the index and moved over it, so a scan cut short never leaves half of one
+    private void writeIndex(List<Entry> found) {
+        File temporary = new File(root, INDEX_NAME + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(found.size());
+                for (Entry entry : found) {
+                    out.writeUTF(entry.file);
+                    out.writeUTF(entry.member != null ? entry.member : "");
+                    out.writeLong(entry.fileSize);
+                    out.writeLong(entry.lastModified);
+                    out.writeInt(entry.romSize);
+                    out.write(entry.header.toBytes());
+                }
+            }
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Read-only library: it still works, just without the index
+            System.err.println("Could not write the library index: " + e.getMessage());
+            temporary.delete();
+        }
+    }
+}
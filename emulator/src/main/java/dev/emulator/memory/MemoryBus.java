@@ -0,0 +1,421 @@
+package dev.emulator.memory;
+
+import dev.emulator.cartridge.Cartridge;
+import dev.emulator.display.FrameSink;
+import dev.emulator.hardware.Apu;
+import dev.emulator.hardware.InterruptManager;
+import dev.emulator.hardware.Joypad;
+import dev.emulator.hardware.Ppu;
+import dev.emulator.hardware.Scheduler;
+import dev.emulator.hardware.Timer;
+import dev.emulator.profile.ExecutionCounters;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class MemoryBus {
+    // Told when memory that code was decoded from is written (see watchCode)
+    public interface CodeListener {
+        void codeWritten(int page);
+    }
+
+    private final byte[][] wram; // 8KB Working RAM, as 32 pages of 256 bytes
+    private final byte[] hram;   // 127 Bytes High RAM
+
+    // What unmapped memory (External RAM, missing ROM) reads as
+    private static final byte[] OPEN_BUS = new byte[0x100];
+    private static final ByteBuffer OPEN_ROM = ByteBuffer.allocate(2 * Cartridge.BANK_SIZE);
+    static {
+        Arrays.fill(OPEN_BUS, (byte) 0xFF);
+        Arrays.fill(OPEN_ROM.array(), (byte) 0xFF);
+    }
+
+    // Distinct values of romBankKey()
+    public static final int ROM_BANK_KEYS = 2 * Cartridge.MAX_ROM_BANKS;
+
+    // --- ROM ---
+    // Not in the page table: reads index the cartridge's image (memory-mapped, so not a byte[])
+    // directly, at the offset of the bank mapped in each 16KB half. A bank switch only moves
+    // those two offsets.
+    private ByteBuffer rom = OPEN_ROM;
+    private final int[] romOffsets = {0, Cartridge.BANK_SIZE};
+    // Cartridge RAM bank the pages at 0xA000-0xBFFF were last mapped for (-1: handlers)
+    private int mappedRamBank = -1;
+
+    // --- PAGE TABLE ---
+    // One entry per 256-byte page: the array backing it and where the page starts in that array.
+    // A null entry means the page has side effects and goes through the handlers instead.
+    private final byte[][] readPages = new byte[256][];
+    private final int[] readOffsets = new int[256];
+    private final byte[][] writePages = new byte[256][];
+    private final int[] writeOffsets = new int[256];
+
+    // Pages of WRAM (0xC0-0xDF) and HRAM (0xFF) holding decoded code. Their writes are taken off
+    // the fast path until the first one, which tells the listener and maps the page back.
+    private final boolean[] codePages = new boolean[256];
+    private CodeListener codeListener;
+
+    // Pages of VRAM (0x80-0x9F) and WRAM (0xC0-0xDF) shared with a fork (see fork). Their writes
+    // are taken off the fast path too; the first one swaps in a private copy of the page.
+    private final boolean[] shared = new boolean[256];
+
+    private final Scheduler scheduler;
+    private final Timer timer;
+    private final Ppu ppu;
+    private final Apu apu;
+    private final Joypad joypad;
+    private final InterruptManager interruptManager;
+    private final FrameSink display;
+    private Cartridge cartridge;
+    // Null unless ExecutionCounters.ENABLED
+    private final ExecutionCounters counters = ExecutionCounters.ENABLED ? new ExecutionCounters() : null;
+
+    // Serial debug buffer
+    private int sb = 0;
+
+    public MemoryBus(FrameSink display) {
+        this.display = display;
+        this.interruptManager = new InterruptManager();
+        this.scheduler = new Scheduler();
+        this.timer = new Timer(interruptManager, scheduler);
+        this.ppu = new Ppu(interruptManager, scheduler, display);
+        this.apu = new Apu(scheduler);
+        this.joypad = new Joypad(interruptManager);
+        this.wram = new byte[32][0x100];
+        this.hram = new byte[0x80];
+        scheduler.setHandler(Scheduler.BANK_SWITCH, time -> { });
+        mapMemory();
+    }
+
+    // See fork()
+    private MemoryBus(MemoryBus source, FrameSink display) {
+        source.shareAll();
+        this.display = display;
+        this.interruptManager = new InterruptManager(source.interruptManager);
+        this.scheduler = new Scheduler(source.scheduler);
+        this.timer = new Timer(source.timer, interruptManager, scheduler);
+        this.ppu = new Ppu(source.ppu, interruptManager, scheduler, display);
+        this.apu = new Apu(source.apu, scheduler);
+        this.joypad = new Joypad(source.joypad, interruptManager);
+        this.wram = source.wram.clone();
+        this.hram = source.hram.clone();
+        this.sb = source.sb;
+        System.arraycopy(source.shared, 0, shared, 0, shared.length);
+        scheduler.setHandler(Scheduler.BANK_SWITCH, time -> { });
+        mapMemory();
+        if (source.cartridge != null) {
+            insertCartridge(source.cartridge.fork());
+            source.mapCartridgeRam(); // Its RAM pages are shared now too
+        }
+    }
+
+    /**
+     * An independent copy of this bus and all the hardware on it, in the same state, drawing into
+     * the given sink. WRAM and VRAM are not copied: both buses keep pointing at the same pages
+     * until either one writes to a page, which then gets its own copy. So a fork costs its
+     * registers, OAM, HRAM and page tables, plus 256 bytes per page written afterwards by either
+     * side. The cartridge's ROM is shared and its RAM is copy-on-write too. Call it from the
+     * thread running this bus (its page table changes); the fork can then be handed to any
+     * thread. What the CPUs share on top of that (see {@link dev.emulator.cpu.Cpu#fork}) is safe
+     * to use from several threads at once.
+     */
+    public MemoryBus fork(FrameSink display) {
+        return new MemoryBus(this, display);
+    }
+
+    public void insertCartridge(Cartridge cartridge) {
+        this.cartridge = cartridge;
+        cartridge.setClock(scheduler::now);
+        mapCartridge();
+    }
+
+    public Cartridge getCartridge() { return cartridge; }
+
+    private void mapMemory() {
+        // 0x8000-0x9FFF: VRAM
+        for (int page = 0x80; page < 0xA0; page++) {
+            mapVram(page);
+        }
+        // 0xA000-0xBFFF: External RAM (not present: reads 0xFF, writes ignored)
+        for (int page = 0xA0; page < 0xC0; page++) {
+            map(page, OPEN_BUS, 0, false);
+        }
+        // 0xC000-0xDFFF: WRAM, and 0xE000-0xFDFF: its Echo
+        for (int page = 0xC0; page < 0xE0; page++) {
+            mapWram(page);
+        }
+        // 0xFE00-0xFEFF: OAM (writes go through the PPU so the unusable tail stays 0xFF)
+        map(0xFE, ppu.getOam(), 0, false);
+        // 0xFF00-0xFFFF: I/O, HRAM and IE are left to the handlers
+    }
+
+    private void mapCartridge() {
+        rom = cartridge.getRom();
+        romOffsets[0] = cartridge.getRomOffset(0);
+        romOffsets[1] = cartridge.getRomOffset(1);
+        mapCartridgeRam();
+    }
+
+    // After a write to the bank controller: move the ROM offsets, remap RAM if its bank changed
+    private void bankSwitched() {
+        int offset0 = cartridge.getRomOffset(0);
+        int offset1 = cartridge.getRomOffset(1);
+        if (offset0 != romOffsets[0] || offset1 != romOffsets[1]) {
+            romOffsets[0] = offset0;
+            romOffsets[1] = offset1;
+            // The CPU may be in the middle of a block decoded from the old bank
+            scheduler.schedule(Scheduler.BANK_SWITCH, scheduler.now());
+        }
+        if (cartridge.getRamBank() != mappedRamBank) mapCartridgeRam();
+    }
+
+    private void mapCartridgeRam() {
+        mappedRamBank = cartridge.getRamBank();
+        for (int page = 0xA0; page < 0xC0; page++) {
+            mapCartridgeRam(page);
+        }
+    }
+
+    // A page of the cartridge RAM bank, writable unless shared or waiting for its first write
+    // since the last save; null (handlers) when there is no plain RAM there
+    private void mapCartridgeRam(int page) {
+        byte[] memory = cartridge.getRamPage(page - 0xA0);
+        map(page, memory, 0, memory != null && cartridge.isRamPageWritable(page - 0xA0));
+    }
+
+    // Once per frame, on the emulation thread: hands the cartridge RAM written since the last
+    // call to its save file, if it has one (see Cartridge.flushSaveRam)
+    public void flushSaveRam() {
+        if (cartridge != null && cartridge.flushSaveRam()) mapCartridgeRam();
+    }
+
+    /**
+     * Identifies the ROM bank an address below 0x8000 reads from right now: the bank number and
+     * which half of the ROM area it is mapped in, as a number below ROM_BANK_KEYS. For caches
+     * of anything derived from ROM contents.
+     */
+    public int romBankKey(int address) {
+        int half = address >> 14;
+        return (romOffsets[half] >> 13) | half;
+    }
+
+    // Tile data writes (up to 0x97FF) go through the PPU so its tile cache sees them; tile map
+    // writes are plain stores unless the page is shared
+    private void mapVram(int page) {
+        map(page, ppu.getVram()[page - 0x80], 0, page >= 0x98 && !shared[page]);
+    }
+
+    // A WRAM page and its echo; writable unless shared or holding code
+    private void mapWram(int page) {
+        byte[] memory = wram[page - 0xC0];
+        boolean writable = !shared[page] && !codePages[page];
+        map(page, memory, 0, writable);
+        if (page + 0x20 < 0xFE) map(page + 0x20, memory, 0, writable);
+    }
+
+    private void map(int page, byte[] memory, int offset, boolean writable) {
+        readPages[page] = memory;
+        readOffsets[page] = offset;
+        writePages[page] = writable ? memory : null;
+        writeOffsets[page] = writable ? offset : 0;
+    }
+
+    public void setCodeListener(CodeListener listener) {
+        this.codeListener = listener;
+    }
+
+    // Reports the next write to this WRAM or HRAM page (or WRAM's echo of it) to the listener
+    public void watchCode(int page) {
+        if (codePages[page]) return;
+        codePages[page] = true;
+        if (page < 0xE0) mapWram(page);
+    }
+
+    private void codeWritten(int page) {
+        codePages[page] = false;
+        if (page < 0xE0) mapWram(page);
+        codeListener.codeWritten(page);
+    }
+
+    private void shareAll() {
+        for (int page = 0x80; page < 0xA0; page++) {
+            shared[page] = true;
+            mapVram(page);
+        }
+        for (int page = 0xC0; page < 0xE0; page++) {
+            shared[page] = true;
+            mapWram(page);
+        }
+    }
+
+    // First write to a shared page: from now on it is this bus's own copy
+    private void unshare(int page) {
+        shared[page] = false;
+        if (page < 0xA0) {
+            byte[][] vram = ppu.getVram();
+            vram[page - 0x80] = vram[page - 0x80].clone();
+            mapVram(page);
+        } else {
+            wram[page - 0xC0] = wram[page - 0xC0].clone();
+            mapWram(page);
+        }
+    }
+
+    public Scheduler getScheduler() { return scheduler; }
+    public InterruptManager getInterruptManager() { return interruptManager; }
+    public Timer getTimer() { return timer; }
+    public Joypad getJoypad() { return joypad; }
+    public Ppu getPpu() { return ppu; }
+    public Apu getApu() { return apu; }
+    // What ran on this machine, or null unless ExecutionCounters.ENABLED (a fork counts from zero)
+    public ExecutionCounters getCounters() { return counters; }
+
+    // --- SAVE STATES ---
+    // The bus's own memory, then every component on it in a fixed order, then the cartridge's
+    // banks and RAM. The ROM is not part of it: a state only loads back into a machine running
+    // the same one.
+
+    public void saveState(ByteBuffer out) {
+        for (byte[] page : wram) out.put(page);
+        out.put(hram).put((byte) sb);
+        interruptManager.saveState(out);
+        scheduler.saveState(out);
+        timer.saveState(out);
+        ppu.saveState(out);
+        joypad.saveState(out);
+        apu.saveState(out);
+        if (cartridge != null) cartridge.saveState(out);
+    }
+
+    public void loadState(ByteBuffer in) {
+        for (int page = 0; page < 256; page++) {
+            if (shared[page]) unshare(page);
+        }
+        for (byte[] page : wram) in.get(page);
+        in.get(hram);
+        sb = in.get() & 0xFF;
+        interruptManager.loadState(in);
+        scheduler.loadState(in);
+        timer.loadState(in);
+        ppu.loadState(in);
+        joypad.loadState(in);
+        apu.loadState(in); // After the scheduler: it books its next batch again
+        if (cartridge != null) {
+            cartridge.loadState(in);
+            mapCartridge();
+        }
+
+        // Code decoded from RAM that was just replaced
+        for (int page = 0; page < 256; page++) {
+            if (codePages[page]) codeWritten(page);
+        }
+    }
+
+    // --- DMA TRANSFER (The Fix for Sprites) ---
+    private void dmaTransfer(int value) {
+        // value is the upper byte of the source address (e.g., value=0xC0 means source is 0xC000)
+        int source = value * 0x100;
+
+        for (int i = 0; i < 160; i++) { // Copy 160 bytes (40 sprites * 4 bytes)
+            int byteValue = readByte(source + i);
+            ppu.writeByte(0xFE00 + i, byteValue); // Write directly to OAM
+        }
+    }
+
+    public int readByte(int address) {
+        if (ExecutionCounters.ENABLED) counters.countRead(address);
+        return readCode(address);
+    }
+
+    // A read of code to decode it: the same as readByte, but not counted as a data read
+    public int readCode(int address) {
+        if (address < 0x8000) {
+            return rom.get(romOffsets[address >> 14] + (address & 0x3FFF)) & 0xFF;
+        }
+        int page = address >> 8;
+        byte[] memory = readPages[page];
+        if (memory != null) {
+            return memory[readOffsets[page] + (address & 0xFF)] & 0xFF;
+        }
+        return readIo(address);
+    }
+
+    public void writeByte(int address, int value) {
+        if (ExecutionCounters.ENABLED) counters.countWrite(address);
+        int page = address >> 8;
+        byte[] memory = writePages[page];
+        if (memory != null) {
+            memory[writeOffsets[page] + (address & 0xFF)] = (byte) value;
+            return;
+        }
+        writeHandler(address, value);
+    }
+
+    // Reads of the unmapped pages: 0xFF00-0xFFFF, and cartridge RAM when it is not plain memory
+    private int readIo(int address) {
+        if (address >= 0xFF80) {
+            if (address == 0xFFFF) return interruptManager.getInterruptEnable();
+            return hram[address - 0xFF80] & 0xFF;
+        }
+        if (address < 0xFF00) return cartridge != null ? cartridge.readByte(address) : 0xFF;
+        if (address == 0xFF00) return joypad.readByte();
+        if (address >= 0xFF04 && address <= 0xFF07) return timer.readByte(address);
+        if (address == 0xFF0F) return interruptManager.getInterruptFlag();
+        if (address >= 0xFF10 && address <= 0xFF3F) return apu.readByte(address);
+        if (address >= 0xFF40 && address <= 0xFF4B) return ppu.readByte(address);
+        return 0xFF;
+    }
+
+    // Writes with side effects: bank controller, VRAM tile data, cartridge RAM that is disabled,
+    // a clock register or not yet marked dirty, shared pages, WRAM pages holding code, OAM, I/O, HRAM and IE
+    private void writeHandler(int address, int value) {
+        if (address < 0x8000) {
+            if (cartridge != null) {
+                cartridge.writeByte(address, value);
+                bankSwitched();
+            }
+        } else if (address < 0xFE00) {
+            int page = address >> 8;
+            if (address < 0xA000) {
+                // VRAM tile data, or a page shared with a fork
+                if (shared[page]) unshare(page);
+                ppu.writeByte(address, value);
+            } else if (address < 0xC000) {
+                // Cartridge RAM page shared with a fork or clean since the last save, disabled
+                // RAM or a clock register
+                if (cartridge != null) {
+                    cartridge.writeByte(address, value);
+                    mapCartridgeRam(page);
+                }
+            } else {
+                // WRAM (or its echo) page shared with a fork or holding code
+                page = 0xC0 + ((page - 0xC0) & 0x1F);
+                if (shared[page]) unshare(page);
+                if (codePages[page]) codeWritten(page);
+                wram[page - 0xC0][address & 0xFF] = (byte) value;
+            }
+        } else if (address < 0xFF00) {
+            ppu.writeByte(address, value); // OAM Write
+        } else if (address < 0xFF80) {
+            if (address == 0xFF00) { joypad.writeByte(value); return; }
+            if (address == 0xFF01) { sb = value; return; }
+            if (address == 0xFF02) {
+                if (value == 0x81) System.out.print((char)sb);
+                return;
+            }
+            if (address >= 0xFF04 && address <= 0xFF07) { timer.writeByte(address, value); return; }
+            if (address == 0xFF0F) { interruptManager.setInterruptFlag(value); return; }
+            if (address >= 0xFF10 && address <= 0xFF3F) { apu.writeByte(address, value); return; }
+
+            // --- DMA TRIGGER ---
+            if (address == 0xFF46) { dmaTransfer(value); return; }
+
+            if (address >= 0xFF40 && address <= 0xFF4B) { ppu.writeByte(address, value); return; }
+        } else if (address < 0xFFFF) {
+            if (codePages[0xFF]) codeWritten(0xFF);
+            hram[address - 0xFF80] = (byte) value;
+        } else {
+            interruptManager.setInterruptEnable(value);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package dev.emulator.profile;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * What a machine executed: how often each base and CB opcode ran and the cycles it took, and
+ * how often each memory region was read and written, with every I/O register its own region.
+ *
+ * Off unless the JVM runs with -Dlr35902.counters=true (Main's --counters sets it). The switch
+ * is a static final constant, so with it off the JIT drops every counting site from the CPU
+ * and bus as dead code. With it on, counting is a plain long[] increment on the emulation
+ * thread: no synchronization, and the block compiler is not used, so that every instruction
+ * goes through the interpreter where it is counted.
+ *
+ * Instruction fetches are not memory accesses here: the regions only count what instructions
+ * read and wrote (and OAM DMA). Cycles skipped in idle loops and while halted belong to no
+ * opcode; the report shows them as the rest of the emulated time.
+ */
+public final class ExecutionCounters {
+    // Read once, when the class is first used
+    public static final boolean ENABLED = Boolean.getBoolean("lr35902.counters");
+
+    // --- REGIONS ---
+    private static final int ROM0 = 0, ROMX = 1, VRAM = 2, CART_RAM = 3, WRAM = 4, ECHO = 5, OAM = 6, UNUSABLE = 7;
+    // 0xFF00-0xFF7F, one per register
+    private static final int IO = 8;
+    private static final int HRAM = IO + 0x80;
+    private static final int IE = HRAM + 1;
+    private static final int REGIONS = IE + 1;
+
+    private static final String[] IO_NAMES = new String[0x80];
+    static {
+        String[][] names = {
+            { "00", "P1" }, { "01", "SB" }, { "02", "SC" }, { "04", "DIV" }, { "05", "TIMA" }, { "06", "TMA" },
+            { "07", "TAC" }, { "0F", "IF" }, { "10", "NR10" }, { "11", "NR11" }, { "12", "NR12" },
+            { "13", "NR13" }, { "14", "NR14" }, { "16", "NR21" }, { "17", "NR22" }, { "18", "NR23" },
+            { "19", "NR24" }, { "1A", "NR30" }, { "1B", "NR31" }, { "1C", "NR32" }, { "1D", "NR33" },
+            { "1E", "NR34" }, { "20", "NR41" }, { "21", "NR42" }, { "22", "NR43" }, { "23", "NR44" },
+            { "24", "NR50" }, { "25", "NR51" }, { "26", "NR52" }, { "40", "LCDC" }, { "41", "STAT" },
+            { "42", "SCY" }, { "43", "SCX" }, { "44", "LY" }, { "45", "LYC" }, { "46", "DMA" }, { "47", "BGP" },
+            { "48", "OBP0" }, { "49", "OBP1" }, { "4A", "WY" }, { "4B", "WX" },
+        };
+        for (int register = 0; register < 0x80; register++) {
+            IO_NAMES[register] = String.format("FF%02X", register)
+                    + (register >= 0x30 && register < 0x40 ? " wave RAM" : "");
+        }
+        for (String[] name : names) {
+            int register = Integer.parseInt(name[0], 16);
+            IO_NAMES[register] = "FF" + name[0] + " " + name[1];
+        }
+    }
+
+    private final long[] opcodes = new long[256];
+    private final long[] opcodeCycles = new long[256];
+    private final long[] cbOpcodes = new long[256];
+    private final long[] cbCycles = new long[256];
+    private final long[] reads = new long[REGIONS];
+    private final long[] writes = new long[REGIONS];
+
+    public void countOpcode(int opcode, long cycles) {
+        opcodes[opcode]++;
+        opcodeCycles[opcode] += cycles;
+    }
+
+    // Cycles of the whole instruction, prefix included (all of them also count as opcode 0xCB)
+    public void countCbOpcode(int opcode, int cycles) {
+        cbOpcodes[opcode]++;
+        cbCycles[opcode] += cycles;
+    }
+
+    public void countRead(int address) {
+        reads[region(address)]++;
+    }
+
+    public void countWrite(int address) {
+        writes[region(address)]++;
+    }
+
+    private static int region(int address) {
+        switch (address >> 13) {
+            case 0: case 1: return ROM0;
+            case 2: case 3: return ROMX;
+            case 4: return VRAM;
+            case 5: return CART_RAM;
+            case 6: return WRAM;
+            default:
+                if (address < 0xFE00) return ECHO;
+                if (address < 0xFEA0) return OAM;
+                if (address < 0xFF00) return UNUSABLE;
+                if (address < 0xFF80) return IO + (address & 0x7F);
+                return address == 0xFFFF ? IE : HRAM;
+        }
+    }
+
+    private static String regionName(int region) {
+        switch (region) {
+            case ROM0: return "ROM bank 0";
+            case ROMX: return "ROM bank N";
+            case VRAM: return "VRAM";
+            case CART_RAM: return "Cartridge RAM";
+            case WRAM: return "WRAM";
+            case ECHO: return "Echo RAM";
+            case OAM: return "OAM";
+            case UNUSABLE: return "FEA0-FEFF";
+            case HRAM: return "HRAM";
+            case IE: return "FFFF IE";
+            default: return IO_NAMES[region - IO];
+        }
+    }
+
+    /**
+     * Prints the counts, busiest first: the top opcodes by cycles, the top CB opcodes, and every
+     * region that was accessed. totalCycles is the machine's clock, to put the opcodes' share in
+     * proportion.
+     */
+    public void report(PrintStream out, long totalCycles, int top) {
+        long executed = sum(opcodes);
+        long executedCycles = sum(opcodeCycles);
+        out.printf("Instructions: %,d executed in %,d cycles (%.1f%% of %,d emulated; the rest halted or skipped)%n",
+                executed, executedCycles, percent(executedCycles, totalCycles), totalCycles);
+        out.printf("  %14s %6s %14s %6s  %s%n", "count", "%", "cycles", "%", "opcode");
+        for (int opcode : busiest(opcodeCycles, top)) {
+            out.printf("  %,14d %5.1f%% %,14d %5.1f%%  %02X %s%n", opcodes[opcode], percent(opcodes[opcode], executed),
+                    opcodeCycles[opcode], percent(opcodeCycles[opcode], executedCycles), opcode, OpcodeNames.base(opcode));
+        }
+
+        long cbExecuted = sum(cbOpcodes);
+        if (cbExecuted > 0) {
+            long cbTotal = sum(cbCycles);
+            out.printf("CB instructions: %,d executed%n", cbExecuted);
+            for (int opcode : busiest(cbCycles, top / 2)) {
+                out.printf("  %,14d %5.1f%% %,14d %5.1f%%  CB %02X %s%n", cbOpcodes[opcode],
+                        percent(cbOpcodes[opcode], cbExecuted), cbCycles[opcode], percent(cbCycles[opcode], cbTotal),
+                        opcode, OpcodeNames.cb(opcode));
+            }
+        }
+
+        long[] accesses = new long[REGIONS];
+        for (int region = 0; region < REGIONS; region++) accesses[region] = reads[region] + writes[region];
+        long readTotal = sum(reads);
+        long writeTotal = sum(writes);
+        out.printf("Memory accesses: %,d reads, %,d writes%n", readTotal, writeTotal);
+        out.printf("  %14s %6s %14s %6s  %s%n", "reads", "%", "writes", "%", "region");
+        for (int region : busiest(accesses, REGIONS)) {
+            out.printf("  %,14d %5.1f%% %,14d %5.1f%%  %s%n", reads[region], percent(reads[region], readTotal),
+                    writes[region], percent(writes[region], writeTotal), regionName(region));
+        }
+    }
+
+    // Indices of the non-zero counts, largest first, at most limit of them
+    private static List<Integer> busiest(long[] counts, int limit) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) indices.add(i);
+        }
+        indices.sort(Comparator.comparingLong((Integer i) -> counts[i]).reversed());
+        return indices.subList(0, Math.min(limit, indices.size()));
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) sum += count;
+        return sum;
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
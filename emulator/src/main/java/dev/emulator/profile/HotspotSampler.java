@@ -0,0 +1,171 @@
+package dev.emulator.profile;
+
+import dev.emulator.memory.MemoryBus;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Where a game spends its emulated time: every SAMPLE_CYCLES cycles of the CPU clock, the
+ * address of the next instruction to execute (with the ROM bank it is in) and the call stack
+ * that led there are counted. So a sample lands just after the instruction that crossed the
+ * sample point. The result is a table of hot addresses and, for a flame graph, the stacks in
+ * collapsed format ("frame;frame;leaf count" per line, as flamegraph.pl and speedscope read).
+ *
+ * The stack is a shadow of the Game Boy's own: the CPU reports every CALL, RST and interrupt
+ * ({@link #enter}) and every RET and RETI ({@link #leave}). Each frame remembers where its
+ * return address was pushed, so a RET pops every frame at or below SP: code that drops its
+ * return address, or jumps out of a routine, unwinds correctly at the next RET further up.
+ * Stacks are interned in a tree, so a sample is one table update and allocates nothing.
+ *
+ * Off unless the JVM runs with -Dlr35902.profile=true (Main's --profile sets it), the same way
+ * as {@link ExecutionCounters}: the switch is a static final constant, and while sampling the
+ * block compiler is not used, so every instruction passes a sample point.
+ *
+ * Addresses are keyed as bank << 16 | address. Below 0x8000 the bank is the ROM bank mapped
+ * there; anything else is bank 0.
+ */
+public final class HotspotSampler {
+    // Read once, when the class is first used
+    public static final boolean ENABLED = Boolean.getBoolean("lr35902.profile");
+
+    // A prime, so the samples do not lock onto a loop or the 70224-cycle frame
+    public static final int SAMPLE_CYCLES = 1009;
+    // Deeper calls are attributed to the frame at this depth
+    private static final int MAX_DEPTH = 64;
+
+    private final MemoryBus bus;
+    private long nextSample;
+    private long samples;
+
+    // The shadow stack: the tree node of each depth (0 is the root) and the SP its return address is at
+    private final int[] stackNodes = new int[MAX_DEPTH + 1];
+    private final int[] stackPointers = new int[MAX_DEPTH + 1];
+    private int depth;
+
+    // Tree of the stacks seen: parent and frame (a routine's key) of each node, node 0 the root
+    private int[] parents = new int[256];
+    private int[] frames = new int[256];
+    private int nodes = 1;
+    // (parent << 32 | frame) -> node
+    private final LongHistogram children = new LongHistogram();
+    // (node << 32 | key of the address) -> samples
+    private final LongHistogram histogram = new LongHistogram();
+
+    public HotspotSampler(MemoryBus bus, long now) {
+        this.bus = bus;
+        this.nextSample = now + SAMPLE_CYCLES;
+    }
+
+    /**
+     * Called before each instruction with its address. Takes the samples due by now: with idle
+     * loops skipped or the CPU halted the clock can move on by many sample periods at once, and
+     * the time all goes to this next instruction, not the one that moved the clock. Time halted
+     * is charged to the instruction after the HALT, and skipped loop passes to the loop's top.
+     */
+    public void tick(int pc, long now) {
+        if (now < nextSample) return;
+        long due = (now - nextSample) / SAMPLE_CYCLES + 1;
+        nextSample += due * SAMPLE_CYCLES;
+        samples += due;
+        histogram.add((long) stackNodes[depth] << 32 | key(pc), due);
+    }
+
+    // A CALL, RST or interrupt has pushed its return address at sp and jumped to target
+    public void enter(int target, int sp) {
+        if (depth == MAX_DEPTH) return;
+        int parent = stackNodes[depth];
+        int frame = key(target);
+        long edge = (long) parent << 32 | frame;
+        int node = (int) children.get(edge);
+        if (node == 0) {
+            node = addNode(parent, frame);
+            children.add(edge, node);
+        }
+        depth++;
+        stackNodes[depth] = node;
+        stackPointers[depth] = sp;
+    }
+
+    // A RET or RETI is about to pop its return address from sp
+    public void leave(int sp) {
+        while (depth > 0 && stackPointers[depth] <= sp) depth--;
+    }
+
+    // The machine's state was replaced (save state loaded, rewind): the stack is unknown again
+    public void restart(long now) {
+        depth = 0;
+        nextSample = now + SAMPLE_CYCLES;
+    }
+
+    public long getSamples() { return samples; }
+
+    private int addNode(int parent, int frame) {
+        if (nodes == parents.length) {
+            parents = Arrays.copyOf(parents, 2 * nodes);
+            frames = Arrays.copyOf(frames, 2 * nodes);
+        }
+        parents[nodes] = parent;
+        frames[nodes] = frame;
+        return nodes++;
+    }
+
+    private int key(int address) {
+        return address < 0x8000 ? (bus.romBankKey(address) >> 1) << 16 | address : address;
+    }
+
+    /** Prints the top addresses by samples, each with its share of the run and its symbol. */
+    public void report(PrintStream out, SymbolTable symbols, int top) {
+        LongHistogram flat = new LongHistogram();
+        long[] keys = histogram.keys();
+        long[] counts = histogram.counts();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] >= 0) flat.add((int) keys[i], counts[i]);
+        }
+
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < flat.keys().length; i++) {
+            if (flat.keys()[i] >= 0) slots.add(i);
+        }
+        slots.sort(Comparator.comparingLong((Integer i) -> flat.counts()[i]).reversed());
+
+        out.printf("Profile: %,d samples (one every %d cycles), %d addresses, %d distinct stacks%n",
+                samples, SAMPLE_CYCLES, flat.size(), nodes - 1);
+        out.printf("  %10s %6s  %-7s  %s%n", "samples", "%", "address", "symbol");
+        for (int slot : slots.subList(0, Math.min(top, slots.size()))) {
+            int key = (int) flat.keys()[slot];
+            long count = flat.counts()[slot];
+            out.printf("  %,10d %5.1f%%  %s  %s%n", count, 100.0 * count / samples, SymbolTable.format(key),
+                    symbols.describe(key));
+        }
+    }
+
+    /**
+     * Writes one line per distinct stack: the routines from the outermost call in, then the
+     * symbol the sampled address is in, and the number of samples. Lines are sorted.
+     */
+    public void writeCollapsed(PrintStream out, SymbolTable symbols) {
+        String[] paths = new String[nodes];
+        paths[0] = "";
+        for (int node = 1; node < nodes; node++) { // A parent is always created before its children
+            paths[node] = paths[parents[node]] + symbols.name(frames[node]) + ";";
+        }
+
+        Map<String, Long> lines = new TreeMap<>();
+        long[] keys = histogram.keys();
+        long[] counts = histogram.counts();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] < 0) continue;
+            String line = paths[(int) (keys[i] >>> 32)] + symbols.name((int) keys[i]);
+            lines.merge(line, counts[i], Long::sum);
+        }
+        for (Map.Entry<String, Long> line : lines.entrySet()) {
+            out.println(line.getKey() + " " + line.getValue());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dev.emulator.profile;
+
+import java.util.Arrays;
+
+/**
+ * Counts per non-negative long key, in an open-addressing table of primitives: adding to a key
+ * that is already there allocates nothing, so it can run on every sample.
+ */
+final class LongHistogram {
+    private static final long EMPTY = -1;
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    LongHistogram() {
+        keys = new long[1024];
+        counts = new long[1024];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void add(long key, long count) {
+        int slot = slot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+                slot = slot(keys, key);
+            }
+        }
+        counts[slot] += count;
+    }
+
+    // 0 if the key was never added
+    long get(long key) {
+        return counts[slot(keys, key)];
+    }
+
+    int size() { return size; }
+
+    // The table as it is, keys then counts, for iteration; slots holding no key have key -1
+    long[] keys() { return keys; }
+    long[] counts() { return counts; }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[2 * oldKeys.length];
+        counts = new long[2 * oldKeys.length];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slot(keys, oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    // The key's slot, or the empty one where it would go (linear probing)
+    private static int slot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+}
@@ -0,0 +1,78 @@
+package dev.emulator.profile;
+
+/**
+ * Mnemonics of the base and CB-prefixed opcodes, for reports. Immediates are shown by kind
+ * (d8, d16, a8, a16, r8), not value.
+ */
+public final class OpcodeNames {
+    private static final String[] BASE = {
+        // 0x0_
+        "NOP", "LD BC,d16", "LD (BC),A", "INC BC", "INC B", "DEC B", "LD B,d8", "RLCA",
+        "LD (a16),SP", "ADD HL,BC", "LD A,(BC)", "DEC BC", "INC C", "DEC C", "LD C,d8", "RRCA",
+        // 0x1_
+        "STOP", "LD DE,d16", "LD (DE),A", "INC DE", "INC D", "DEC D", "LD D,d8", "RLA",
+        "JR r8", "ADD HL,DE", "LD A,(DE)", "DEC DE", "INC E", "DEC E", "LD E,d8", "RRA",
+        // 0x2_
+        "JR NZ,r8", "LD HL,d16", "LD (HL+),A", "INC HL", "INC H", "DEC H", "LD H,d8", "DAA",
+        "JR Z,r8", "ADD HL,HL", "LD A,(HL+)", "DEC HL", "INC L", "DEC L", "LD L,d8", "CPL",
+        // 0x3_
+        "JR NC,r8", "LD SP,d16", "LD (HL-),A", "INC SP", "INC (HL)", "DEC (HL)", "LD (HL),d8", "SCF",
+        "JR C,r8", "ADD HL,SP", "LD A,(HL-)", "DEC SP", "INC A", "DEC A", "LD A,d8", "CCF",
+        // 0x4_-0x7_ and 0x8_-0xB_ are generated below
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        null, null, null, null, null, null, null, null, null, null, null, null, null, null, null, null,
+        // 0xC_
+        "RET NZ", "POP BC", "JP NZ,a16", "JP a16", "CALL NZ,a16", "PUSH BC", "ADD A,d8", "RST 00H",
+        "RET Z", "RET", "JP Z,a16", "PREFIX CB", "CALL Z,a16", "CALL a16", "ADC A,d8", "RST 08H",
+        // 0xD_
+        "RET NC", "POP DE", "JP NC,a16", "ILLEGAL D3", "CALL NC,a16", "PUSH DE", "SUB d8", "RST 10H",
+        "RET C", "RETI", "JP C,a16", "ILLEGAL DB", "CALL C,a16", "ILLEGAL DD", "SBC A,d8", "RST 18H",
+        // 0xE_
+        "LDH (a8),A", "POP HL", "LD (C),A", "ILLEGAL E3", "ILLEGAL E4", "PUSH HL", "AND d8", "RST 20H",
+        "ADD SP,r8", "JP (HL)", "LD (a16),A", "ILLEGAL EB", "ILLEGAL EC", "ILLEGAL ED", "XOR d8", "RST 28H",
+        // 0xF_
+        "LDH A,(a8)", "POP AF", "LD A,(C)", "DI", "ILLEGAL F4", "PUSH AF", "OR d8", "RST 30H",
+        "LD HL,SP+r8", "LD SP,HL", "LD A,(a16)", "EI", "ILLEGAL FC", "ILLEGAL FD", "CP d8", "RST 38H",
+    };
+
+    // Operand order of the register fields in 0x40-0xBF and the CB page
+    private static final String[] REGISTERS = { "B", "C", "D", "E", "H", "L", "(HL)", "A" };
+    private static final String[] ALU = { "ADD A,", "ADC A,", "SUB ", "SBC A,", "AND ", "XOR ", "OR ", "CP " };
+    private static final String[] SHIFTS = { "RLC", "RRC", "RL", "RR", "SLA", "SRA", "SWAP", "SRL" };
+    private static final String[] BITS = { "BIT", "RES", "SET" };
+
+    private static final String[] CB = new String[256];
+
+    static {
+        for (int opcode = 0x40; opcode < 0x80; opcode++) {
+            BASE[opcode] = opcode == 0x76 ? "HALT"
+                    : "LD " + REGISTERS[(opcode >> 3) & 7] + "," + REGISTERS[opcode & 7];
+        }
+        for (int opcode = 0x80; opcode < 0xC0; opcode++) {
+            BASE[opcode] = ALU[(opcode >> 3) & 7] + REGISTERS[opcode & 7];
+        }
+        for (int opcode = 0; opcode < 256; opcode++) {
+            String register = REGISTERS[opcode & 7];
+            CB[opcode] = opcode < 0x40 ? SHIFTS[opcode >> 3] + " " + register
+                    : BITS[(opcode >> 6) - 1] + " " + ((opcode >> 3) & 7) + "," + register;
+        }
+    }
+
+    private OpcodeNames() {
+    }
+
+    public static String base(int opcode) {
+        return BASE[opcode];
+    }
+
+    // The instruction 0xCB opcode
+    public static String cb(int opcode) {
+        return CB[opcode];
+    }
+}
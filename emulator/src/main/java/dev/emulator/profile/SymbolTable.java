@@ -0,0 +1,73 @@
+package dev.emulator.profile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Names for code addresses, from a .sym file as rgblink (-n) and no$gmb write them: one
+ * "BB:AAAA Name" per line, bank and address in hex, ';' starting a comment. An address is
+ * named after the nearest symbol at or below it in the same bank and 16KB area, so the
+ * middle of a routine resolves to the routine (or its local label).
+ *
+ * Addresses are keyed as bank << 16 | address; see {@link HotspotSampler} for which bank.
+ */
+public final class SymbolTable {
+    private final TreeMap<Integer, String> symbols = new TreeMap<>();
+
+    // No names: every address is shown as BB:AAAA
+    public SymbolTable() {
+    }
+
+    public static SymbolTable load(File file) throws IOException {
+        SymbolTable table = new SymbolTable();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf(';');
+                if (comment >= 0) line = line.substring(0, comment);
+                String[] fields = line.trim().split("\\s+");
+                int colon = fields[0].indexOf(':');
+                if (fields.length < 2 || colon < 0) continue; // Blank, or a [section] header
+                try {
+                    int bank = Integer.parseInt(fields[0].substring(0, colon), 16);
+                    int address = Integer.parseInt(fields[0].substring(colon + 1), 16);
+                    if (address <= 0xFFFF) table.symbols.putIfAbsent(bank << 16 | address, fields[1]);
+                } catch (NumberFormatException e) {
+                    // Not a symbol line
+                }
+            }
+        }
+        return table;
+    }
+
+    public int size() { return symbols.size(); }
+
+    // The symbol the address belongs to, e.g. "UpdateSprites.loop"
+    public String name(int key) {
+        Map.Entry<Integer, String> symbol = find(key);
+        return symbol != null ? symbol.getValue() : format(key);
+    }
+
+    // The symbol and how far into it the address is, e.g. "UpdateSprites+0x1A"
+    public String describe(int key) {
+        Map.Entry<Integer, String> symbol = find(key);
+        if (symbol == null) return format(key);
+        int offset = key - symbol.getKey();
+        return offset == 0 ? symbol.getValue() : String.format("%s+0x%X", symbol.getValue(), offset);
+    }
+
+    private Map.Entry<Integer, String> find(int key) {
+        Map.Entry<Integer, String> symbol = symbols.floorEntry(key);
+        // Same bank and same area (ROM0, ROMX, VRAM/cartridge RAM, WRAM/HRAM)
+        return symbol != null && (symbol.getKey() >> 14) == (key >> 14) ? symbol : null;
+    }
+
+    public static String format(int key) {
+        return String.format("%02X:%04X", key >>> 16, key & 0xFFFF);
+    }
+}
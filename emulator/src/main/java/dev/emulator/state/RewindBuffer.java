@@ -0,0 +1,233 @@
+package dev.emulator.state;
+
+import dev.emulator.cpu.Cpu;
+import dev.emulator.display.FrameSkipPolicy;
+import dev.emulator.memory.MemoryBus;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rewind history: a save state every `interval` frames, kept in a ring of `capacity` snapshots.
+ *
+ * The emulation thread only copies the machine into one of a few raw buffers and queues it.
+ * A background thread turns it into an XOR delta against the snapshot before it (two states a few
+ * frames apart are mostly identical, so the delta is mostly zeros) and run-length encodes that.
+ * Only the newest snapshot is kept whole; stepping back loads it and then XORs the newest delta
+ * into it, which gives the one before. The oldest snapshot simply falls off the ring.
+ *
+ * Delta encoding: a sequence of (zero run, literal count, literal bytes), the two counts as
+ * varints, covering the state from start to end.
+ */
+public final class RewindBuffer {
+    // Raw snapshots in flight between the two threads
+    private static final int RAW_BUFFERS = 4;
+
+    private final Cpu cpu;
+    private final MemoryBus bus;
+    private final int interval;
+    private int framesToSnapshot;
+
+    // Emulation thread -> compressor: filled raw buffers, and the empty ones coming back
+    private final BlockingQueue<ByteBuffer> pending = new ArrayBlockingQueue<>(RAW_BUFFERS);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(RAW_BUFFERS);
+    // Queued and not yet compressed
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Thread compressor;
+
+    // --- Ring (guarded by this) ---
+    // Delta of each snapshot against the one before it; a slot's array is reused when it fits
+    private final byte[][] deltas;
+    private final int[] lengths;
+    private int newestSlot = -1;
+    private int count;
+    // The newest snapshot in the ring, whole (all zeros when the ring is empty)
+    private final byte[] newest;
+    private int stateSize;
+    // Deltas are encoded here first, then copied into their slot at their real size
+    private final byte[] scratch;
+
+    // Stats
+    private volatile long compressedBytes;
+    private volatile long droppedSnapshots;
+
+    public RewindBuffer(Cpu cpu, MemoryBus bus, int interval, int capacity) {
+        if (interval < 1 || capacity < 1) throw new IllegalArgumentException("Interval and capacity must be at least 1");
+        this.cpu = cpu;
+        this.bus = bus;
+        this.interval = interval;
+        this.framesToSnapshot = interval;
+        this.deltas = new byte[capacity][];
+        this.lengths = new int[capacity];
+        int maxSize = SaveState.maxSize(bus);
+        this.newest = new byte[maxSize];
+        this.scratch = new byte[maxSize + (maxSize / 127 + 2) * 4];
+        for (int i = 0; i < RAW_BUFFERS; i++) free.add(ByteBuffer.allocate(maxSize));
+
+        compressor = new Thread(this::compressLoop, "Rewind compressor");
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    // --- EMULATION THREAD ---
+
+    // Called at the end of every frame; every `interval` frames the machine is queued for compression
+    public void frameDone() {
+        if (--framesToSnapshot > 0) return;
+        framesToSnapshot = interval;
+
+        ByteBuffer raw = free.poll();
+        if (raw == null) {
+            // The compressor is behind: better a gap in the history than a stall
+            droppedSnapshots++;
+            return;
+        }
+        raw.clear();
+        SaveState.write(cpu, bus, raw);
+        raw.flip();
+        inFlight.incrementAndGet();
+        pending.add(raw);
+    }
+
+    /**
+     * Puts the machine back to the newest snapshot and drops it from the ring, so every call goes
+     * one snapshot further back. Returns false, leaving the machine alone, once the ring is empty.
+     */
+    public boolean stepBack() {
+        // Let the snapshots already queued land in the ring first (nothing new gets queued meanwhile)
+        while (inFlight.get() > 0) Thread.yield();
+
+        synchronized (this) {
+            if (count == 0) return false;
+            SaveState.read(cpu, bus, ByteBuffer.wrap(newest, 0, stateSize));
+
+            // The newest is now the one before it
+            applyDelta(deltas[newestSlot], lengths[newestSlot], newest);
+            compressedBytes -= lengths[newestSlot];
+            newestSlot = (newestSlot + deltas.length - 1) % deltas.length;
+            count--;
+        }
+        framesToSnapshot = interval;
+        return true;
+    }
+
+    // Steps back up to `snapshots` times; returns how many it went
+    public int rewind(int snapshots) {
+        int done = 0;
+        while (done < snapshots && stepBack()) done++;
+        return done;
+    }
+
+    // --- STATS ---
+
+    public synchronized int getSnapshots() { return count; }
+    public int getCapacity() { return deltas.length; }
+    // Emulated time the ring goes back
+    public synchronized double getSecondsStored() {
+        return count * interval * (FrameSkipPolicy.FRAME_NANOS / 1e9);
+    }
+    // Compressed deltas currently in the ring
+    public long getCompressedBytes() { return compressedBytes; }
+    // What the same snapshots would take as plain save states
+    public synchronized long getRawBytes() { return (long) count * stateSize; }
+    // Heap held by the rewind buffer, deltas plus the fixed buffers
+    public synchronized long getMemoryBytes() {
+        long total = (long) (RAW_BUFFERS + 1) * newest.length + scratch.length;
+        for (byte[] delta : deltas) if (delta != null) total += delta.length;
+        return total;
+    }
+    // Snapshots not taken because the compressor was behind
+    public long getDroppedSnapshots() { return droppedSnapshots; }
+
+    // --- COMPRESSOR THREAD ---
+
+    private void compressLoop() {
+        try {
+            while (true) {
+                ByteBuffer raw = pending.take();
+                synchronized (this) {
+                    push(raw);
+                }
+                free.add(raw);
+                inFlight.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            // Daemon thread: only interrupted when the VM goes down
+        }
+    }
+
+    // Appends a raw snapshot to the ring as a delta against the newest, and makes it the newest
+    private void push(ByteBuffer raw) {
+        byte[] state = raw.array();
+        int size = raw.limit();
+
+        int slot = (newestSlot + 1) % deltas.length;
+        if (count == deltas.length) {
+            compressedBytes -= lengths[slot]; // Overwrites the oldest
+        } else {
+            count++;
+        }
+
+        int length = encodeDelta(newest, state, size, scratch);
+        byte[] delta = deltas[slot];
+        if (delta == null || delta.length < length || delta.length > 2 * length + 64) {
+            delta = deltas[slot] = new byte[length];
+        }
+        System.arraycopy(scratch, 0, delta, 0, length);
+        lengths[slot] = length;
+        compressedBytes += length;
+        newestSlot = slot;
+        System.arraycopy(state, 0, newest, 0, size);
+        stateSize = size;
+    }
+
+    // Run-length encodes base XOR state into out; returns the encoded length
+    static int encodeDelta(byte[] base, byte[] state, int size, byte[] out) {
+        int in = 0;
+        int pos = 0;
+        while (in < size) {
+            int zeros = 0;
+            while (in + zeros < size && base[in + zeros] == state[in + zeros]) zeros++;
+            in += zeros;
+
+            // Literals run until the next pair of equal bytes (a single one is cheaper inline)
+            int literals = 0;
+            while (in + literals < size && literals < 127
+                    && (base[in + literals] != state[in + literals]
+                        || (in + literals + 1 < size && base[in + literals + 1] != state[in + literals + 1]))) {
+                literals++;
+            }
+
+            pos = putVarint(out, pos, zeros);
+            pos = putVarint(out, pos, literals);
+            for (int i = 0; i < literals; i++, in++) out[pos++] = (byte) (base[in] ^ state[in]);
+        }
+        return pos;
+    }
+
+    // XORs an encoded delta into target
+    static void applyDelta(byte[] delta, int length, byte[] target) {
+        int pos = 0;
+        int out = 0;
+        while (pos < length) {
+            int zeros = 0;
+            int shift = 0;
+            int b;
+            do { b = delta[pos++]; zeros |= (b & 0x7F) << shift; shift += 7; } while (b < 0);
+            int literals = delta[pos++]; // Always below 128, so a single byte
+            out += zeros;
+            for (int i = 0; i < literals; i++) target[out++] ^= delta[pos++];
+        }
+    }
+
+    private static int putVarint(byte[] out, int pos, int value) {
+        while (value >= 0x80) {
+            out[pos++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+}
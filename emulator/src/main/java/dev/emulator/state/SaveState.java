@@ -0,0 +1,84 @@
+package dev.emulator.state;
+
+import dev.emulator.cpu.Cpu;
+import dev.emulator.memory.MemoryBus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Snapshot of the whole machine in a compact binary format:
+ *
+ * <pre>
+ *   "LRSS"  magic
+ *   u16     format version
+ *   CPU     AF BC DE HL SP PC, IME, cycle counter, HALT
+ *   bus     WRAM, HRAM, serial data, then IE/IF, scheduler deadlines, timer, PPU, joypad, APU,
+ *           then the cartridge's bank registers (and clock) and RAM
+ * </pre>
+ *
+ * Big-endian, fixed layout, no field names: each component writes and reads its own part in
+ * the same order. Saving and loading only copy into or out of a buffer allocated once, so a
+ * state round trip costs a few microseconds (see SaveStateBenchmark). The ROM is not included;
+ * a state only loads back into a machine running the same cartridge.
+ */
+public final class SaveState {
+    private static final int MAGIC = 0x4C525353; // "LRSS"
+    public static final int VERSION = 3;
+
+    // Upper bound of a state's size without the cartridge (it is ~16.5KB, mostly WRAM and VRAM)
+    private static final int MACHINE_SIZE = 20 * 1024;
+
+    private final Cpu cpu;
+    private final MemoryBus bus;
+    private final ByteBuffer buffer;
+
+    public SaveState(Cpu cpu, MemoryBus bus) {
+        this.cpu = cpu;
+        this.bus = bus;
+        this.buffer = ByteBuffer.allocate(maxSize(bus));
+    }
+
+    // Upper bound of the size of a state of the machine on this bus, cartridge RAM included
+    public static int maxSize(MemoryBus bus) {
+        return MACHINE_SIZE + (bus.getCartridge() != null ? bus.getCartridge().stateSize() : 0);
+    }
+
+    // Snapshots the machine into this object's buffer, replacing the previous snapshot
+    public void save() {
+        buffer.clear();
+        write(cpu, bus, buffer);
+        buffer.flip();
+    }
+
+    // Puts the machine back in the state of the last save()
+    public void load() {
+        buffer.rewind();
+        read(cpu, bus, buffer);
+        buffer.rewind();
+    }
+
+    // The last snapshot, from position 0 to its size: ready to be written out, or filled by a
+    // caller (clear, put, flip) with a snapshot read back in
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public static void write(Cpu cpu, MemoryBus bus, ByteBuffer out) {
+        out.putInt(MAGIC).putShort((short) VERSION);
+        cpu.saveState(out);
+        bus.saveState(out);
+    }
+
+    // Throws IllegalArgumentException, before touching the machine, if the data does not start with this version's header
+    public static void read(Cpu cpu, MemoryBus bus, ByteBuffer in) {
+        if (in.remaining() < 6 || in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a save state");
+        }
+        int version = in.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported save state version " + version + " (expected " + VERSION + ")");
+        }
+        cpu.loadState(in);
+        bus.loadState(in);
+    }
+}